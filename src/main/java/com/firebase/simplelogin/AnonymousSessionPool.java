@@ -0,0 +1,204 @@
+package com.firebase.simplelogin;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of anonymous sessions obtained from the auth server ahead of demand.
+ *
+ * The pool keeps at least its configured number of sessions ready and grows up to four times that when sessions
+ * are consumed faster than a refill round trip can replace them. Each session is retired on the shared expiry wheel
+ * shortly before its token expires, or once it reaches the maximum age if the token carries no expiry, and a
+ * replacement is fetched right away, so the pool stays fresh through idle periods. Nothing is fetched until the pool
+ * is first used.
+ *
+ * @author Firebase
+ *
+ */
+class AnonymousSessionPool {
+
+  /**
+   * Requests a new anonymous session; the result must be reported with add() or fetchFailed().
+   */
+  interface Source {
+
+    public void fetch();
+
+  }
+
+  static final long MAX_SESSION_AGE_MILLIS = 60 * 60 * 1000;
+  private static final long EXPIRY_MARGIN_MILLIS = 5 * 60 * 1000;
+  private static final long REFILL_HORIZON_MILLIS = 5 * 1000;
+  private static final int MAX_GROWTH_FACTOR = 4;
+  private static final double RATE_WEIGHT = 0.2;
+
+  private final int size;
+  private final Source source;
+  private final AsyncLogger log;
+  private final ConcurrentLinkedQueue<Session> ready = new ConcurrentLinkedQueue<Session>();
+  private final AtomicInteger readyCount = new AtomicInteger();
+  private final AtomicInteger fetching = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private volatile boolean closed;
+  private long lastTakeMillis;
+  private double takeIntervalMillis;
+
+  AnonymousSessionPool(int size, Source source, AsyncLogger log) {
+    this.size = size;
+    this.source = source;
+    this.log = log;
+  }
+
+  /**
+   * @return A ready session, or null if none is available. Either way a refill is started if needed.
+   */
+  Session take() {
+    recordTake(System.currentTimeMillis());
+    Session session;
+    while ((session = ready.poll()) != null) {
+      readyCount.decrementAndGet();
+      session.cancelRetirement();
+      // Retirement runs on a one second tick, so a session may still go stale just before it
+      if (session.isFresh(System.currentTimeMillis())) {
+        break;
+      }
+    }
+    refill();
+    return session;
+  }
+
+  void add(String token, JSONObject userData) {
+    fetching.decrementAndGet();
+    if (closed) {
+      return;
+    }
+    final Session session = new Session(token, userData, System.currentTimeMillis());
+    ready.add(session);
+    readyCount.incrementAndGet();
+    session.retirement = ExpiryWheel.get().schedule(session.staleAt(), new Runnable() {
+      public void run() {
+        retire(session);
+      }
+    }, log);
+  }
+
+  private void retire(Session session) {
+    if (ready.remove(session)) {
+      readyCount.decrementAndGet();
+      refill();
+    }
+  }
+
+  void fetchFailed() {
+    failures.incrementAndGet();
+    fetching.decrementAndGet();
+  }
+
+  /**
+   * Discard all ready sessions.
+   */
+  void clear() {
+    Session session;
+    while ((session = ready.poll()) != null) {
+      readyCount.decrementAndGet();
+      session.cancelRetirement();
+    }
+  }
+
+  /**
+   * Discard all ready sessions and stop fetching new ones.
+   */
+  void close() {
+    closed = true;
+    clear();
+  }
+
+  /**
+   * Start enough fetches to bring the pool up to its current target size. At most the shortfall seen on entry is
+   * fetched, and a fetch that fails before returning ends the refill until the next take(); the failure hands its
+   * slot straight back, so retrying at once would spin, on the shared timer thread when called from a retirement.
+   */
+  void refill() {
+    int attempts = targetSize() - readyCount.get() - fetching.get();
+    for (int i = 0; i < attempts && !closed; i++) {
+      int inFlight = fetching.get();
+      if (targetSize() - readyCount.get() - inFlight <= 0) {
+        return;
+      }
+      // Claim one fetch at a time, so concurrent refills cannot both act on the same shortfall
+      if (fetching.compareAndSet(inFlight, inFlight + 1)) {
+        int failuresBefore = failures.get();
+        source.fetch();
+        if (failures.get() != failuresBefore) {
+          return;
+        }
+      }
+    }
+  }
+
+  private synchronized void recordTake(long now) {
+    if (lastTakeMillis != 0) {
+      long interval = now - lastTakeMillis;
+      takeIntervalMillis = takeIntervalMillis == 0 ? interval : RATE_WEIGHT * interval + (1 - RATE_WEIGHT) * takeIntervalMillis;
+    }
+    lastTakeMillis = now;
+  }
+
+  private synchronized int targetSize() {
+    if (takeIntervalMillis <= 0) {
+      return size;
+    }
+    int demand = (int) Math.ceil(REFILL_HORIZON_MILLIS / Math.max(1, takeIntervalMillis));
+    return Math.max(size, Math.min(size * MAX_GROWTH_FACTOR, demand));
+  }
+
+  /**
+   * A pre-minted anonymous session.
+   */
+  static final class Session {
+
+    private final String token;
+    private final JSONObject userData;
+    private final long fetchedMillis;
+    private volatile ExpiryWheel.Timeout retirement;
+
+    Session(String token, JSONObject userData, long fetchedMillis) {
+      this.token = token;
+      this.userData = userData;
+      this.fetchedMillis = fetchedMillis;
+    }
+
+    String getToken() {
+      return token;
+    }
+
+    JSONObject getUserData() {
+      return userData;
+    }
+
+    boolean isFresh(long now) {
+      return now < staleAt();
+    }
+
+    /**
+     * @return The time after which the session is no longer handed out.
+     */
+    long staleAt() {
+      FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(token);
+      if (claims != null && claims.getExpiresAt() != 0) {
+        return claims.getExpiresAt() - EXPIRY_MARGIN_MILLIS;
+      }
+      return fetchedMillis + MAX_SESSION_AGE_MILLIS;
+    }
+
+    void cancelRetirement() {
+      ExpiryWheel.Timeout timeout = retirement;
+      if (timeout != null) {
+        timeout.cancel();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.LogLevel;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Level-filtered front end for a SimpleLoginLogger.
+ *
+ * Disabled levels return before allocating anything. Enabled messages are queued to a single daemon thread;
+ * if the queue is full, messages are dropped rather than blocking the caller.
+ *
+ * @author Firebase
+ *
+ */
+class AsyncLogger {
+
+  private static final int QUEUE_CAPACITY = 256;
+
+  private static final SimpleLoginLogger STDERR_LOGGER = new SimpleLoginLogger() {
+    public void log(LogLevel level, String message, Throwable throwable) {
+      System.err.println("[FirebaseSimpleLogin] " + level + ": " + message);
+      if (throwable != null) {
+        throwable.printStackTrace();
+      }
+    }
+  };
+
+  private final SimpleLoginLogger logger;
+  private final LogLevel level;
+
+  AsyncLogger(SimpleLoginLogger logger, LogLevel level) {
+    this.logger = logger != null ? logger : STDERR_LOGGER;
+    this.level = level;
+  }
+
+  static AsyncLogger fromOptions(SimpleLoginOptions options) {
+    LogLevel level = options.getLogLevel();
+    if (level == null) {
+      level = options.isDebug() ? LogLevel.DEBUG : LogLevel.WARN;
+    }
+    return new AsyncLogger(options.getLogger(), level);
+  }
+
+  boolean isEnabled(LogLevel messageLevel) {
+    return messageLevel != LogLevel.NONE && messageLevel.ordinal() >= level.ordinal();
+  }
+
+  void debug(String message) {
+    log(LogLevel.DEBUG, message, null);
+  }
+
+  void warn(String message, Throwable throwable) {
+    log(LogLevel.WARN, message, throwable);
+  }
+
+  void error(String message, Throwable throwable) {
+    log(LogLevel.ERROR, message, throwable);
+  }
+
+  void log(final LogLevel messageLevel, final String message, final Throwable throwable) {
+    if (!isEnabled(messageLevel)) {
+      return;
+    }
+    try {
+      Worker.EXECUTOR.execute(new Runnable() {
+        public void run() {
+          logger.log(messageLevel, message, throwable);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      // Queue full; drop the message.
+    }
+  }
+
+  private static final class Worker {
+
+    static final ExecutorService EXECUTOR = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "FirebaseSimpleLogin-Log");
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, new ThreadPoolExecutor.DiscardPolicy());
+  }
+
+}
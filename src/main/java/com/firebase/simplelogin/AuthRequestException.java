@@ -0,0 +1,29 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+
+/**
+ * Thrown by a blocking auth server request that produced no response to hand to a RequestHandler.
+ *
+ * @author Firebase
+ *
+ */
+class AuthRequestException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  private final FirebaseSimpleLoginErrorCode code;
+
+  AuthRequestException(FirebaseSimpleLoginErrorCode code) {
+    super(code.name());
+    this.code = code;
+  }
+
+  /**
+   * @return The error to report for the request.
+   */
+  FirebaseSimpleLoginErrorCode getCode() {
+    return code;
+  }
+
+}
@@ -0,0 +1,147 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.AuthEvent;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fans auth state changes out to SimpleLoginAuthStateListener subscriptions.
+ *
+ * Each subscription keeps only the latest pending state. Deliveries are held back for the coalescing window,
+ * serialized per subscription on the subscriber's executor, and skipped when they match the state the
+ * subscriber last saw, so a logout/login flap during a reconnect collapses into nothing.
+ *
+ * @author Firebase
+ *
+ */
+class AuthStatePublisher {
+
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+  private final long coalesceMillis;
+
+  AuthStatePublisher(long coalesceMillis) {
+    this.coalesceMillis = coalesceMillis;
+  }
+
+  void subscribe(SimpleLoginAuthStateListener listener, Executor executor) {
+    subscriptions.addIfAbsent(new Subscription(listener, executor != null ? executor : DIRECT_EXECUTOR));
+  }
+
+  void unsubscribe(SimpleLoginAuthStateListener listener) {
+    for (Subscription subscription : subscriptions) {
+      if (subscription.listener == listener) {
+        subscriptions.remove(subscription);
+      }
+    }
+  }
+
+  void clear() {
+    subscriptions.clear();
+  }
+
+  void publish(AuthEvent event, FirebaseSimpleLoginUser user) {
+    if (subscriptions.isEmpty()) {
+      return;
+    }
+    State state = new State(event, user);
+    for (Subscription subscription : subscriptions) {
+      subscription.offer(state);
+    }
+  }
+
+  private static final class State {
+
+    private final AuthEvent event;
+    private final FirebaseSimpleLoginUser user;
+
+    State(AuthEvent event, FirebaseSimpleLoginUser user) {
+      this.event = event;
+      this.user = user;
+    }
+
+    boolean sameAs(State other) {
+      if (other == null || other.event != event) {
+        return false;
+      }
+      String token = user != null ? user.getAuthToken() : null;
+      String otherToken = other.user != null ? other.user.getAuthToken() : null;
+      return token == null ? otherToken == null : token.equals(otherToken);
+    }
+  }
+
+  private final class Subscription implements Runnable {
+
+    private final SimpleLoginAuthStateListener listener;
+    private final Executor executor;
+    private final AtomicReference<State> pending = new AtomicReference<State>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private State delivered;
+
+    Subscription(SimpleLoginAuthStateListener listener, Executor executor) {
+      this.listener = listener;
+      this.executor = executor;
+    }
+
+    void offer(State state) {
+      pending.set(state);
+      if (scheduled.compareAndSet(false, true)) {
+        if (coalesceMillis > 0) {
+          BackgroundTimer.get().schedule(new Runnable() {
+            public void run() {
+              deliver();
+            }
+          }, coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+        else {
+          deliver();
+        }
+      }
+    }
+
+    private void deliver() {
+      try {
+        executor.execute(this);
+      }
+      catch (RejectedExecutionException e) {
+        // The subscriber's executor is shut down; drop this delivery, but let a later one try again
+        scheduled.set(false);
+      }
+    }
+
+    public void run() {
+      while (true) {
+        State state = pending.getAndSet(null);
+        if (state != null && !state.sameAs(delivered)) {
+          delivered = state;
+          listener.authStateChanged(state.event, state.user);
+        }
+        scheduled.set(false);
+        if (pending.get() == null || !scheduled.compareAndSet(false, true)) {
+          return;
+        }
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Subscription && ((Subscription) o).listener == listener;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(listener);
+    }
+  }
+
+}
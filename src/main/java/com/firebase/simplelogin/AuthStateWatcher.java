@@ -0,0 +1,88 @@
+package com.firebase.simplelogin;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Watches the .info/authenticated location of a Firebase root on behalf of every registered session.
+ *
+ * Exactly one ValueEventListener is attached per root while at least one session is registered; it is removed
+ * as soon as the last session unregisters, so repeated logins do not accumulate listeners.
+ *
+ * @author Firebase
+ *
+ */
+class AuthStateWatcher implements ValueEventListener {
+
+  /**
+   * Callback for sessions registered with a watcher.
+   */
+  interface Session {
+
+    public void authenticationChanged(boolean authenticated);
+
+  }
+
+  private static final Map<String, AuthStateWatcher> watchers = new HashMap<String, AuthStateWatcher>();
+
+  private final String key;
+  private final Firebase authRef;
+  private final Set<Session> sessions = new CopyOnWriteArraySet<Session>();
+
+  private AuthStateWatcher(String key, Firebase root) {
+    this.key = key;
+    this.authRef = root.child(".info/authenticated");
+  }
+
+  /**
+   * Register a session for auth state changes on the root of ref. Registering the same session twice is a no-op.
+   */
+  static void register(Firebase ref, Session session) {
+    Firebase root = ref.getRoot();
+    String key = root.toString();
+    synchronized (watchers) {
+      AuthStateWatcher watcher = watchers.get(key);
+      if (watcher == null) {
+        watcher = new AuthStateWatcher(key, root);
+        watchers.put(key, watcher);
+      }
+      if (watcher.sessions.add(session) && watcher.sessions.size() == 1) {
+        watcher.authRef.addValueEventListener(watcher);
+      }
+    }
+  }
+
+  /**
+   * Unregister a session; the underlying listener is detached once no sessions remain for the root.
+   */
+  static void unregister(Firebase ref, Session session) {
+    String key = ref.getRoot().toString();
+    synchronized (watchers) {
+      AuthStateWatcher watcher = watchers.get(key);
+      if (watcher != null && watcher.sessions.remove(session) && watcher.sessions.isEmpty()) {
+        watcher.authRef.removeEventListener(watcher);
+        watchers.remove(watcher.key);
+      }
+    }
+  }
+
+  public void onDataChange(DataSnapshot snapshot) {
+    Object value = snapshot.getValue();
+    if (value instanceof Boolean) {
+      boolean authenticated = ((Boolean) value).booleanValue();
+      for (Session session : sessions) {
+        session.authenticationChanged(authenticated);
+      }
+    }
+  }
+
+  public void onCancelled(FirebaseError error) {}
+
+}
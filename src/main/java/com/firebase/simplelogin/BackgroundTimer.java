@@ -0,0 +1,34 @@
+package com.firebase.simplelogin;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shared daemon timer for the library's delayed background work.
+ *
+ * Tasks run on a single thread and must be short; anything blocking belongs on its own thread.
+ *
+ * @author Firebase
+ *
+ */
+class BackgroundTimer {
+
+  private static ScheduledExecutorService instance;
+
+  private BackgroundTimer() {}
+
+  static synchronized ScheduledExecutorService get() {
+    if (instance == null) {
+      instance = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "FirebaseSimpleLogin-Timer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return instance;
+  }
+
+}
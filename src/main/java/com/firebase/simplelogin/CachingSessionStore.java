@@ -0,0 +1,104 @@
+package com.firebase.simplelogin;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through, write-through cache in front of an application supplied session store. Entries are dropped when
+ * the store reports them invalidated, so the next read goes back to the store.
+ *
+ * @author Firebase
+ *
+ */
+class CachingSessionStore implements SimpleLoginSessionStore, SimpleLoginSessionStore.InvalidationListener {
+
+  // Caches the store's answer that a key has no value
+  private static final String ABSENT = new String("");
+
+  private final SimpleLoginSessionStore store;
+  private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<String, String>();
+  // Bumped on every invalidation, so a read that raced with one does not cache what may be a stale value
+  private final AtomicLong invalidations = new AtomicLong();
+  // Key this thread is writing; stores that notify synchronously report our own write back on this thread
+  private final ThreadLocal<String> writing = new ThreadLocal<String>();
+
+  CachingSessionStore(SimpleLoginSessionStore store) {
+    this.store = store;
+    store.addInvalidationListener(this);
+  }
+
+  public String get(String key) {
+    String value = cache.get(key);
+    if (value == null) {
+      long before = invalidations.get();
+      value = store.get(key);
+      if (value == null) {
+        value = ABSENT;
+      }
+      cacheWrite(key, value, before);
+    }
+    return value == ABSENT ? null : value;
+  }
+
+  public void put(String key, String value) {
+    long before = invalidations.get();
+    writing.set(key);
+    try {
+      store.put(key, value);
+    }
+    finally {
+      writing.remove();
+    }
+    cacheWrite(key, value, before);
+  }
+
+  public void remove(String key) {
+    long before = invalidations.get();
+    writing.set(key);
+    try {
+      store.remove(key);
+    }
+    finally {
+      writing.remove();
+    }
+    cacheWrite(key, ABSENT, before);
+  }
+
+  /**
+   * Cache a value just read from or written to the store, unless an invalidation arrived meanwhile; the remote
+   * change may have landed after ours, so the next read must go back to the store. The value is cached before the
+   * counter is checked, so an invalidation that races with this either is seen here or removes the entry itself.
+   */
+  private void cacheWrite(String key, String value, long before) {
+    cache.put(key, value);
+    if (invalidations.get() != before) {
+      cache.remove(key);
+    }
+  }
+
+  public void addInvalidationListener(InvalidationListener listener) {
+    store.addInvalidationListener(listener);
+  }
+
+  public void removeInvalidationListener(InvalidationListener listener) {
+    store.removeInvalidationListener(listener);
+  }
+
+  public void invalidated(String key) {
+    // Our own write is about to be cached anyway; only changes made elsewhere must keep it out of the cache
+    if (!key.equals(writing.get())) {
+      invalidations.incrementAndGet();
+    }
+    cache.remove(key);
+  }
+
+  /**
+   * Stop listening for invalidations and drop all cached entries.
+   */
+  void close() {
+    store.removeInvalidationListener(this);
+    cache.clear();
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.firebase.simplelogin;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Delivers completion callbacks on the main thread, or on an application supplied executor.
+ *
+ * Callbacks from any thread are appended to a lock-free queue, and at most one drain task is posted to the target
+ * at a time, so a burst of results costs a single main thread hop instead of one Handler message each. If an
+ * application supplied executor rejects the drain, e.g. because it was shut down, the callbacks run on the
+ * dispatching thread instead of being lost.
+ *
+ * @author Firebase
+ *
+ */
+final class CallbackDispatcher implements Runnable {
+
+  // Upper bound on callbacks run per drain, so a large burst does not hold the main thread in one message
+  private static final int MAX_DRAIN = 256;
+
+  private static CallbackDispatcher mainThread;
+
+  private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final Executor target;
+
+  CallbackDispatcher(Executor target) {
+    this.target = target;
+  }
+
+  /**
+   * @return The process-wide dispatcher for the main thread.
+   */
+  static synchronized CallbackDispatcher mainThread() {
+    if (mainThread == null) {
+      mainThread = new CallbackDispatcher(new MainThreadExecutor());
+    }
+    return mainThread;
+  }
+
+  static CallbackDispatcher fromOptions(SimpleLoginOptions options) {
+    return options.getCallbackExecutor() != null ? new CallbackDispatcher(options.getCallbackExecutor()) : mainThread();
+  }
+
+  void dispatch(Runnable callback) {
+    queue.offer(callback);
+    if (scheduled.compareAndSet(false, true)) {
+      schedule();
+    }
+  }
+
+  private void schedule() {
+    try {
+      target.execute(this);
+    }
+    catch (RejectedExecutionException e) {
+      // The application's executor is shut down. Run the callbacks here rather than drop them, so that operations
+      // still complete and shutdown() is not left waiting for callbacks that would never run.
+      run();
+    }
+  }
+
+  public void run() {
+    boolean reschedule = true;
+    try {
+      for (int i = 0; i < MAX_DRAIN; i++) {
+        Runnable callback = queue.poll();
+        if (callback == null) {
+          reschedule = false;
+          break;
+        }
+        callback.run();
+      }
+    }
+    finally {
+      // A throwing callback still propagates, but the callbacks queued behind it are not lost
+      if (reschedule) {
+        schedule();
+      }
+      else {
+        scheduled.set(false);
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+          schedule();
+        }
+      }
+    }
+  }
+
+  /**
+   * Posts to the main looper through a Handler created on the first callback rather than when a SimpleLogin is
+   * constructed.
+   */
+  private static final class MainThreadExecutor implements Executor {
+
+    private Handler handler;
+
+    public synchronized void execute(Runnable command) {
+      if (handler == null) {
+        handler = new Handler(Looper.getMainLooper());
+      }
+      handler.post(command);
+    }
+  }
+
+}
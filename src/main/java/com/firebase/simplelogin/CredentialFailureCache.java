@@ -0,0 +1,162 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide, short-lived cache of email/password combinations the auth server has rejected.
+ *
+ * Credentials are never stored: entries are keyed by a SHA-256 hash salted with a random per-process value. An
+ * unknown email is remembered for any password; a wrong password only for that exact password. Memory is bounded
+ * by evicting the least recently used emails, and an email's entries are dropped whenever its account changes.
+ *
+ * @author Firebase
+ *
+ */
+class CredentialFailureCache {
+
+  private static final int MAX_EMAILS = 4096;
+  private static final int MAX_PASSWORDS_PER_EMAIL = 8;
+
+
+  private static final Map<String, EmailEntry> entries = new LinkedHashMap<String, EmailEntry>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, EmailEntry> eldest) {
+      return size() > MAX_EMAILS;
+    }
+  };
+
+  private final String namespace;
+  private final long ttlMillis;
+
+  CredentialFailureCache(String namespace, long ttlMillis) {
+    this.namespace = namespace;
+    this.ttlMillis = ttlMillis;
+  }
+
+  boolean isEnabled() {
+    return ttlMillis > 0;
+  }
+
+  /**
+   * @return The error the auth server recently returned for these credentials, or null.
+   */
+  FirebaseSimpleLoginErrorCode lookup(String email, String password) {
+    if (!isEnabled()) {
+      return null;
+    }
+    String emailKey = hash(namespace, email);
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      EmailEntry entry = entries.get(emailKey);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.unknownUntil > now) {
+        return FirebaseSimpleLoginErrorCode.UserDoesNotExist;
+      }
+      Long until = entry.wrongPasswords.get(hash(emailKey, password));
+      return until != null && until.longValue() > now ? FirebaseSimpleLoginErrorCode.InvalidPassword : null;
+    }
+  }
+
+  /**
+   * Remember a failed login, if it failed because of the credentials themselves.
+   */
+  void recordFailure(String email, String password, FirebaseSimpleLoginError error) {
+    if (!isEnabled() || error == null) {
+      return;
+    }
+    FirebaseSimpleLoginErrorCode code = error.getCode();
+    if (code != FirebaseSimpleLoginErrorCode.UserDoesNotExist && code != FirebaseSimpleLoginErrorCode.InvalidPassword) {
+      return;
+    }
+    String emailKey = hash(namespace, email);
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      EmailEntry entry = entries.get(emailKey);
+      if (entry == null) {
+        entry = new EmailEntry();
+        entries.put(emailKey, entry);
+      }
+      if (code == FirebaseSimpleLoginErrorCode.UserDoesNotExist) {
+        entry.unknownUntil = now + ttlMillis;
+      }
+      else {
+        entry.prune(now);
+        if (entry.wrongPasswords.size() < MAX_PASSWORDS_PER_EMAIL) {
+          entry.wrongPasswords.put(hash(emailKey, password), Long.valueOf(now + ttlMillis));
+        }
+      }
+    }
+  }
+
+  /**
+   * Forget all failures for an email, e.g. after the account was created or its password changed.
+   */
+  void invalidate(String email) {
+    if (!isEnabled()) {
+      return;
+    }
+    String emailKey = hash(namespace, email);
+    synchronized (entries) {
+      entries.remove(emailKey);
+    }
+  }
+
+  private static String hash(String scope, String value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(Salt.VALUE);
+      digest.update(scope.getBytes("UTF-8"));
+      digest.update((byte) 0);
+      digest.update(value.getBytes("UTF-8"));
+      byte[] bytes = digest.digest();
+      StringBuilder hex = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Seeding SecureRandom can be slow, so the salt is only created once the cache is first used.
+   */
+  private static final class Salt {
+
+    static final byte[] VALUE = new byte[16];
+    static {
+      new SecureRandom().nextBytes(VALUE);
+    }
+  }
+
+  private static final class EmailEntry {
+
+    private long unknownUntil;
+    private final Map<String, Long> wrongPasswords = new HashMap<String, Long>();
+
+    void prune(long now) {
+      for (Iterator<Long> it = wrongPasswords.values().iterator(); it.hasNext();) {
+        if (it.next().longValue() <= now) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+}
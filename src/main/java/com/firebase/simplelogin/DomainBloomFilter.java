@@ -0,0 +1,111 @@
+package com.firebase.simplelogin;
+
+import java.util.Collection;
+
+/**
+ * Compact, immutable bloom filter over domain names. Lookups hash a range of an existing string in place, lower-casing
+ * characters and treating the IDN full stops (U+3002, U+FF0E, U+FF61) as dots, so they do not allocate.
+ *
+ * @author Firebase
+ *
+ */
+final class DomainBloomFilter {
+
+  private static final double LN2 = Math.log(2);
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final long[] bits;
+  private final int bitCount;
+  private final int hashCount;
+
+  private DomainBloomFilter(int bitCount, int hashCount) {
+    this.bits = new long[(bitCount + 63) >>> 6];
+    this.bitCount = bitCount;
+    this.hashCount = hashCount;
+  }
+
+  /**
+   * @return A filter holding the given domains, or null if there are none.
+   */
+  static DomainBloomFilter build(Collection<String> domains, double falsePositiveRate) {
+    if (domains == null || domains.isEmpty()) {
+      return null;
+    }
+    int n = domains.size();
+    int bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, Math.ceil(-n * Math.log(falsePositiveRate) / (LN2 * LN2))));
+    int hashCount = (int) Math.min(16, Math.max(1, Math.round((double) bitCount / n * LN2)));
+    DomainBloomFilter filter = new DomainBloomFilter(bitCount, hashCount);
+    for (String domain : domains) {
+      if (domain != null && domain.length() > 0) {
+        filter.add(hash(domain, 0, domain.length()));
+      }
+    }
+    return filter;
+  }
+
+  /**
+   * @return Whether the domain s[start, end), or one of its parent domains with at least two labels, might be in the
+   * filter.
+   */
+  boolean mightContainDomainOrParent(String s, int start, int end) {
+    int labelStart = start;
+    while (true) {
+      int dot = nextDot(s, labelStart, end);
+      if (dot < 0) {
+        // Only the top level label is left
+        return false;
+      }
+      if (mightContain(hash(s, labelStart, end))) {
+        return true;
+      }
+      labelStart = dot + 1;
+    }
+  }
+
+  private void add(long hash) {
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+      bits[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  private boolean mightContain(long hash) {
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+      if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int nextDot(String s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (isDot(s.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  static boolean isDot(char c) {
+    return c == '.' || c == '\u3002' || c == '\uff0e' || c == '\uff61';
+  }
+
+  private static long hash(String s, int start, int end) {
+    long h = FNV_OFFSET;
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      c = isDot(c) ? '.' : Character.toLowerCase(c);
+      h = (h ^ (c & 0xff)) * FNV_PRIME;
+      h = (h ^ (c >>> 8)) * FNV_PRIME;
+    }
+    return h;
+  }
+
+}
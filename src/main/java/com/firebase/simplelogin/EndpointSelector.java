@@ -0,0 +1,139 @@
+package com.firebase.simplelogin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency-aware routing across one or more auth server endpoints.
+ *
+ * Each endpoint tracks an exponentially weighted moving average of its request latency, and requests go to the
+ * fastest healthy endpoint first. An endpoint that fails several times in a row is ejected for a backoff period
+ * and actively probed; it rejoins the rotation once a probe succeeds or the ejection expires.
+ *
+ * @author Firebase
+ *
+ */
+class EndpointSelector {
+
+  private static final double EWMA_WEIGHT = 0.2;
+  private static final int FAILURES_BEFORE_EJECTION = 3;
+  private static final long BASE_EJECTION_MILLIS = 10 * 1000;
+  private static final long MAX_EJECTION_MILLIS = 5 * 60 * 1000;
+
+  private final Endpoint[] endpoints;
+
+  EndpointSelector(List<String> hosts) {
+    endpoints = new Endpoint[hosts.size()];
+    for (int i = 0; i < endpoints.length; i++) {
+      endpoints[i] = new Endpoint(hosts.get(i));
+    }
+  }
+
+  /**
+   * @return All endpoints in the order they should be tried: healthy endpoints by ascending latency, followed by
+   * ejected endpoints in the order their ejections expire.
+   */
+  List<Endpoint> candidates() {
+    final long now = System.currentTimeMillis();
+    Endpoint[] ordered = endpoints.clone();
+    if (ordered.length > 1) {
+      Arrays.sort(ordered, new Comparator<Endpoint>() {
+        public int compare(Endpoint a, Endpoint b) {
+          long aEjected = a.ejectedUntil > now ? a.ejectedUntil : 0;
+          long bEjected = b.ejectedUntil > now ? b.ejectedUntil : 0;
+          if (aEjected != bEjected) {
+            return aEjected < bEjected ? -1 : 1;
+          }
+          return Double.compare(a.latencyMillis, b.latencyMillis);
+        }
+      });
+    }
+    return Arrays.asList(ordered);
+  }
+
+  List<String> hosts() {
+    List<String> hosts = new ArrayList<String>(endpoints.length);
+    for (Endpoint endpoint : endpoints) {
+      hosts.add(endpoint.host);
+    }
+    return hosts;
+  }
+
+  void recordSuccess(Endpoint endpoint, long latencyMillis) {
+    synchronized (endpoint) {
+      endpoint.latencyMillis = endpoint.samples == 0 ? latencyMillis
+          : EWMA_WEIGHT * latencyMillis + (1 - EWMA_WEIGHT) * endpoint.latencyMillis;
+      endpoint.samples++;
+      endpoint.consecutiveFailures = 0;
+      endpoint.ejections = 0;
+      endpoint.ejectedUntil = 0;
+    }
+  }
+
+  void recordFailure(final Endpoint endpoint) {
+    long ejectionMillis;
+    synchronized (endpoint) {
+      endpoint.consecutiveFailures++;
+      if (endpoints.length < 2 || endpoint.consecutiveFailures < FAILURES_BEFORE_EJECTION
+          || endpoint.ejectedUntil > System.currentTimeMillis()) {
+        return;
+      }
+      ejectionMillis = Math.min(MAX_EJECTION_MILLIS, BASE_EJECTION_MILLIS << Math.min(endpoint.ejections, 10));
+      endpoint.ejections++;
+      endpoint.ejectedUntil = System.currentTimeMillis() + ejectionMillis;
+    }
+    scheduleProbe(endpoint, ejectionMillis / 2);
+  }
+
+  private void scheduleProbe(final Endpoint endpoint, long delayMillis) {
+    BackgroundTimer.get().schedule(new Runnable() {
+      public void run() {
+        Thread thread = new Thread(new Runnable() {
+          public void run() {
+            HttpTransport transport = HttpTransport.retainIfOpen();
+            if (transport == null) {
+              // Nothing is sending requests any more; the ejection simply expires
+              return;
+            }
+            try {
+              long start = System.nanoTime();
+              if (transport.probe(endpoint.host)) {
+                recordSuccess(endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+              }
+            }
+            finally {
+              HttpTransport.release();
+            }
+          }
+        }, "FirebaseSimpleLogin-Probe");
+        thread.setDaemon(true);
+        thread.start();
+      }
+    }, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * An auth server endpoint and its observed health.
+   */
+  static final class Endpoint {
+
+    private final String host;
+    private volatile double latencyMillis;
+    private volatile long ejectedUntil;
+    private int samples;
+    private int consecutiveFailures;
+    private int ejections;
+
+    Endpoint(String host) {
+      this.host = host;
+    }
+
+    String getHost() {
+      return host;
+    }
+  }
+
+}
@@ -0,0 +1,188 @@
+package com.firebase.simplelogin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide hierarchical timing wheel for session expiry.
+ *
+ * Four wheels of 64 slots cover one second, 64 seconds, about 68 minutes and about 3 days per slot. Scheduling and
+ * cancelling are O(1); entries further out are moved to a finer wheel as their time approaches. The wheel ticks once
+ * a second on the background timer, only while it holds entries, and runs everything due in a tick as one batch.
+ * Tasks run on the timer thread and must be short; an exception thrown by one is logged and does not affect the rest.
+ *
+ * @author Firebase
+ *
+ */
+final class ExpiryWheel {
+
+  static final long TICK_MILLIS = 1000;
+
+  private static final int WHEEL_BITS = 6;
+  private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+  private static final int LEVELS = 4;
+  private static final long MAX_DELTA = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+  private static ExpiryWheel instance;
+
+  // Each slot is a circular doubly linked list with a sentinel head
+  private final Timeout[][] slots = new Timeout[LEVELS][WHEEL_SIZE];
+  private long currentTick;
+  private int size;
+  private ScheduledFuture<?> ticker;
+
+  ExpiryWheel() {
+    for (int level = 0; level < LEVELS; level++) {
+      for (int i = 0; i < WHEEL_SIZE; i++) {
+        Timeout head = new Timeout(0, null, null);
+        head.next = head;
+        head.previous = head;
+        slots[level][i] = head;
+      }
+    }
+  }
+
+  static synchronized ExpiryWheel get() {
+    if (instance == null) {
+      instance = new ExpiryWheel();
+    }
+    return instance;
+  }
+
+  /**
+   * Run a task once the given time has passed, to within one tick.
+   *
+   * @param expiresAtMillis Time in milliseconds since the epoch.
+   * @param task Task to run on the timer thread.
+   * @param log Logger for exceptions thrown by the task.
+   * @return Handle to cancel the task with.
+   */
+  Timeout schedule(long expiresAtMillis, Runnable task, AsyncLogger log) {
+    Timeout timeout = new Timeout((expiresAtMillis + TICK_MILLIS - 1) / TICK_MILLIS, task, log);
+    synchronized (this) {
+      if (size == 0) {
+        currentTick = System.currentTimeMillis() / TICK_MILLIS;
+        ticker = BackgroundTimer.get().scheduleAtFixedRate(new Runnable() {
+          public void run() {
+            tick();
+          }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      size++;
+      // The slot for the current tick has already been run
+      place(timeout, 1);
+    }
+    return timeout;
+  }
+
+  private void place(Timeout timeout, long minDelta) {
+    long delta = Math.min(Math.max(timeout.deadlineTick - currentTick, minDelta), MAX_DELTA);
+    long tick = currentTick + delta;
+    int level = 0;
+    while (delta >= 1L << (WHEEL_BITS * (level + 1))) {
+      level++;
+    }
+    Timeout head = slots[level][(int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK];
+    timeout.previous = head.previous;
+    timeout.next = head;
+    head.previous.next = timeout;
+    head.previous = timeout;
+  }
+
+  private void tick() {
+    advance(System.currentTimeMillis());
+  }
+
+  /**
+   * Run everything due up to the given time.
+   */
+  void advance(long nowMillis) {
+    List<Timeout> due = new ArrayList<Timeout>();
+    synchronized (this) {
+      long nowTick = nowMillis / TICK_MILLIS;
+      // Catches up tick by tick if the timer thread was delayed, e.g. while the device slept
+      while (currentTick < nowTick) {
+        currentTick++;
+        for (int level = LEVELS - 1; level > 0; level--) {
+          if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+            cascade(slots[level][(int) (currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK]);
+          }
+        }
+        Timeout head = slots[0][(int) currentTick & WHEEL_MASK];
+        for (Timeout timeout = head.next; timeout != head; timeout = head.next) {
+          timeout.unlink();
+          due.add(timeout);
+        }
+      }
+      size -= due.size();
+      if (size == 0 && ticker != null) {
+        ticker.cancel(false);
+        ticker = null;
+      }
+    }
+    for (Timeout timeout : due) {
+      try {
+        timeout.task.run();
+      }
+      catch (RuntimeException e) {
+        // One failing task must not keep the rest of the batch from expiring
+        timeout.log.error("Uncaught exception in session expiry task", e);
+      }
+    }
+  }
+
+  private void cascade(Timeout head) {
+    for (Timeout timeout = head.next; timeout != head; timeout = head.next) {
+      timeout.unlink();
+      // Cascading happens before the current tick's slot is run, so entries due now still make this tick
+      place(timeout, 0);
+    }
+  }
+
+  private synchronized void cancel(Timeout timeout) {
+    if (timeout.next != null) {
+      timeout.unlink();
+      size--;
+      if (size == 0 && ticker != null) {
+        ticker.cancel(false);
+        ticker = null;
+      }
+    }
+  }
+
+  /**
+   * A scheduled task.
+   */
+  final class Timeout {
+
+    private final long deadlineTick;
+    private final Runnable task;
+    private final AsyncLogger log;
+    private Timeout previous;
+    private Timeout next;
+
+    private Timeout(long deadlineTick, Runnable task, AsyncLogger log) {
+      this.deadlineTick = deadlineTick;
+      this.task = task;
+      this.log = log;
+    }
+
+    /**
+     * Cancel the task if it has not run yet.
+     */
+    void cancel() {
+      ExpiryWheel.this.cancel(this);
+    }
+
+    private void unlink() {
+      previous.next = next;
+      next.previous = previous;
+      previous = null;
+      next = null;
+    }
+  }
+
+}
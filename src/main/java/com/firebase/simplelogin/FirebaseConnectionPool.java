@@ -0,0 +1,421 @@
+package com.firebase.simplelogin;
+
+import com.firebase.client.Firebase;
+import com.firebase.client.Firebase.AuthListener;
+import com.firebase.client.FirebaseError;
+import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+import com.firebase.simplelogin.enums.LogLevel;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of authenticated Firebase connections for servers acting on behalf of many users.
+ *
+ * Firebase.auth() authenticates a whole connection, so a server that works for several users needs one
+ * connection per user. The pool keeps one authenticated root per uid and reuses it for as long as the user's token
+ * stays the same. Callers hold a connection from acquire() until they release() it; once nobody holds it, it may be
+ * unauthenticated and dropped, least recently used first when the pool is full, or after it has been idle longer
+ * than the idle timeout. The pool never grows beyond its maximum size. Connections are also dropped when their token expires, which
+ * is tracked for all of them on a shared timing wheel rather than by scanning the pool.
+ *
+ * Firebase shares a connection between all references to the same Firebase URL in a process, so the
+ * ConnectionFactory is responsible for returning roots that really are backed by separate connections, and for
+ * closing them once the pool discards them.
+ *
+ * The pool is a standalone API for server code; SimpleLogin itself authenticates a single ref and does not use it.
+ * Pass it the FirebaseSimpleLoginUser objects that SimpleLogin logins produce, or tokens minted by your own server.
+ *
+ * @author Firebase
+ *
+ */
+public class FirebaseConnectionPool implements Closeable {
+
+  /**
+   * Creates Firebase roots for the pool.
+   */
+  public interface ConnectionFactory {
+
+    /**
+     * Method called when the pool needs a new connection.
+     *
+     * Called without the pool's lock held; the result may go unused if another caller creates the user's
+     * connection first.
+     *
+     * @param uid The user the connection is for.
+     * @return A Firebase root on a connection not shared with any other pooled root.
+     */
+    public Firebase create(String uid);
+
+    /**
+     * Method called when the pool will no longer use a root it got from create(): it lost a race with another
+     * caller, or its connection was dropped. Pooled roots are unauthenticated first. Called without the pool's lock
+     * held.
+     *
+     * @param ref The root to close, e.g. by taking its connection offline.
+     */
+    public void discard(Firebase ref);
+
+  }
+
+  /**
+   * Handler for connection callbacks.
+   */
+  public interface ConnectionHandler {
+
+    /**
+     * Method called when a connection has been authenticated, or authentication failed.
+     *
+     * @param error FirebaseSimpleLoginError for callback; will be null if no error.
+     * @param ref The authenticated Firebase root; null if there was an error.
+     */
+    public void connected(FirebaseSimpleLoginError error, Firebase ref);
+
+  }
+
+  private final ConnectionFactory factory;
+  private final int maxConnections;
+  private final long idleTimeoutMillis;
+  private final Map<String, Connection> connections = new LinkedHashMap<String, Connection>(16, 0.75f, true);
+  private final Map<Firebase, Connection> connectionsByRef = new IdentityHashMap<Firebase, Connection>();
+  private final ScheduledFuture<?> idleSweep;
+  // The pool has no SimpleLoginOptions of its own; failures of its timer tasks go to stderr
+  private final AsyncLogger log = new AsyncLogger(null, LogLevel.WARN);
+  private boolean closed;
+
+  /**
+   * Connection pool constructor.
+   *
+   * @param factory Factory for new connections.
+   * @param maxConnections Maximum number of pooled connections.
+   * @param idleTimeout How long an unused connection is kept.
+   * @param unit Unit of idleTimeout.
+   */
+  public FirebaseConnectionPool(ConnectionFactory factory, int maxConnections, long idleTimeout, TimeUnit unit) {
+    this.factory = factory;
+    this.maxConnections = Math.max(1, maxConnections);
+    this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+    long sweepMillis = Math.max(1000, idleTimeoutMillis / 2);
+    this.idleSweep = BackgroundTimer.get().scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        evictIdle();
+      }
+    }, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Get a connection authenticated as the given user, reusing a pooled one if it was authenticated with the
+   * same token. A connection handed to the handler must be returned with release().
+   *
+   * @param user Logged in user.
+   * @param handler Handler for asynchronous events.
+   */
+  public void acquire(FirebaseSimpleLoginUser user, ConnectionHandler handler) {
+    if (user == null) {
+      throw new IllegalArgumentException("user must not be null");
+    }
+    acquire(user.getUid(), user.getAuthToken(), handler);
+  }
+
+  /**
+   * Get a connection authenticated with the given token, reusing a pooled one if it was authenticated with the
+   * same token. A connection handed to the handler must be returned with release(). If the pool is full and every
+   * connection is in use or still authenticating, the handler gets a PoolExhausted error.
+   *
+   * @param uid User the token belongs to; the pool key.
+   * @param token Firebase auth token.
+   * @param handler Handler for asynchronous events.
+   */
+  public void acquire(String uid, String token, ConnectionHandler handler) {
+    if (uid == null || token == null || handler == null) {
+      throw new IllegalArgumentException("uid, token and handler must not be null");
+    }
+    FirebaseSimpleLoginErrorCode revokedCode = RevokedTokens.lookup(token);
+    if (revokedCode != null) {
+      handler.connected(FirebaseSimpleLoginError.errorFromCode(revokedCode), null);
+      return;
+    }
+    Connection connection = null;
+    Connection evicted = null;
+    FirebaseSimpleLoginErrorCode failure = null;
+    boolean authenticate = false;
+    boolean ready = false;
+    Firebase created = null;
+    while (connection == null && failure == null) {
+      synchronized (this) {
+        if (closed) {
+          failure = FirebaseSimpleLoginErrorCode.ClientClosed;
+        }
+        else {
+          connection = connections.get(uid);
+          if (connection == null) {
+            Connection victim = connections.size() >= maxConnections ? leastRecentlyUsedIdle() : null;
+            if (connections.size() >= maxConnections && victim == null) {
+              failure = FirebaseSimpleLoginErrorCode.PoolExhausted;
+            }
+            else if (created != null) {
+              if (victim != null) {
+                remove(victim);
+                evicted = victim;
+              }
+              connection = new Connection(uid, created);
+              connections.put(uid, connection);
+              connectionsByRef.put(created, connection);
+            }
+          }
+          if (connection != null) {
+            connection.lastUsedMillis = System.currentTimeMillis();
+            if (token.equals(connection.token) && connection.authenticated) {
+              connection.leases++;
+              ready = true;
+            }
+            else {
+              connection.pending.add(handler);
+              if (!token.equals(connection.token)) {
+                connection.cancelExpiry();
+                connection.token = token;
+                connection.authenticated = false;
+                authenticate = true;
+              }
+            }
+          }
+        }
+      }
+      if (connection == null && failure == null) {
+        // The factory is application code; it runs outside the lock so that a slow one does not stall the pool. If
+        // another acquire for the same uid wins the race, this root is discarded below.
+        created = factory.create(uid);
+      }
+    }
+    if (created != null && (connection == null || connection.ref != created)) {
+      factory.discard(created);
+    }
+    if (evicted != null) {
+      drop(evicted);
+    }
+    if (failure != null) {
+      handler.connected(FirebaseSimpleLoginError.errorFromCode(failure), null);
+    }
+    else if (ready) {
+      handler.connected(null, connection.ref);
+    }
+    else if (authenticate) {
+      authenticate(connection, token);
+    }
+  }
+
+  /**
+   * Return a connection obtained from acquire(). Every connection handed to a ConnectionHandler must be released
+   * exactly once; connections are only evicted to make room, or for being idle, once all of their users have
+   * released them.
+   *
+   * @param ref The Firebase root passed to the ConnectionHandler.
+   */
+  public void release(Firebase ref) {
+    synchronized (this) {
+      Connection connection = connectionsByRef.get(ref);
+      if (connection != null && connection.leases > 0) {
+        connection.leases--;
+        connection.lastUsedMillis = System.currentTimeMillis();
+      }
+    }
+  }
+
+  /**
+   * Unauthenticate and drop the pooled connection for a user, e.g. after they log out.
+   *
+   * @param uid User whose connection to drop.
+   */
+  public void evict(String uid) {
+    Connection connection;
+    synchronized (this) {
+      connection = connections.get(uid);
+      if (connection != null) {
+        remove(connection);
+      }
+    }
+    if (connection != null) {
+      drop(connection);
+    }
+  }
+
+  /**
+   * Unauthenticate and drop all pooled connections.
+   */
+  public void close() {
+    List<Connection> dropped;
+    synchronized (this) {
+      closed = true;
+      dropped = new ArrayList<Connection>(connections.values());
+      for (Connection connection : dropped) {
+        remove(connection);
+      }
+    }
+    idleSweep.cancel(false);
+    for (Connection connection : dropped) {
+      drop(connection);
+    }
+  }
+
+  private void authenticate(final Connection connection, final String token) {
+    connection.ref.auth(token, new AuthListener() {
+      public void onAuthSuccess(Object authData) {
+        List<ConnectionHandler> handlers;
+        synchronized (FirebaseConnectionPool.this) {
+          if (!token.equals(connection.token)) {
+            return; // superseded by a newer token, whose handlers are notified instead
+          }
+          connection.authenticated = true;
+          scheduleExpiry(connection, token);
+          handlers = connection.takePending();
+          connection.leases += handlers.size();
+        }
+        for (ConnectionHandler handler : handlers) {
+          handler.connected(null, connection.ref);
+        }
+      }
+
+      public void onAuthRevoked(FirebaseError error) {
+        RevokedTokens.record(token, error);
+        fail(FirebaseSimpleLoginError.errorFromFirebaseError(error));
+      }
+
+      public void onAuthError(FirebaseError error) {
+        RevokedTokens.record(token, error);
+        fail(FirebaseSimpleLoginError.errorFromFirebaseError(error));
+      }
+
+      private void fail(FirebaseSimpleLoginError error) {
+        List<ConnectionHandler> handlers;
+        boolean removed = false;
+        synchronized (FirebaseConnectionPool.this) {
+          if (!token.equals(connection.token)) {
+            return;
+          }
+          if (connections.get(connection.uid) == connection) {
+            remove(connection);
+            removed = true;
+          }
+          connection.cancelExpiry();
+          handlers = connection.takePending();
+        }
+        if (removed) {
+          factory.discard(connection.ref);
+        }
+        for (ConnectionHandler handler : handlers) {
+          handler.connected(error, null);
+        }
+      }
+    });
+  }
+
+  private void scheduleExpiry(final Connection connection, final String token) {
+    FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(token);
+    long endsAt = claims != null ? claims.getSessionEndsAt() : 0;
+    if (endsAt != 0) {
+      connection.expiry = ExpiryWheel.get().schedule(endsAt, new Runnable() {
+        public void run() {
+          expire(connection, token);
+        }
+      }, log);
+    }
+  }
+
+  private void expire(Connection connection, String token) {
+    synchronized (this) {
+      // The token is dead whether or not the connection is in use, so leased connections expire too
+      if (!token.equals(connection.token) || connections.get(connection.uid) != connection || !connection.pending.isEmpty()) {
+        return;
+      }
+      connection.expiry = null;
+      remove(connection);
+    }
+    drop(connection);
+  }
+
+  private void evictIdle() {
+    List<Connection> idle = new ArrayList<Connection>();
+    synchronized (this) {
+      long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+      for (Connection connection : connections.values()) {
+        if (connection.lastUsedMillis < cutoff && connection.isIdle()) {
+          idle.add(connection);
+        }
+      }
+      for (Connection connection : idle) {
+        remove(connection);
+      }
+    }
+    for (Connection connection : idle) {
+      drop(connection);
+    }
+  }
+
+  /**
+   * @return The least recently used connection that nobody holds and that is not authenticating, or null.
+   */
+  private Connection leastRecentlyUsedIdle() {
+    for (Connection connection : connections.values()) {
+      if (connection.isIdle()) {
+        return connection;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Unauthenticate a connection already removed from the pool and hand its root back to the factory.
+   */
+  private void drop(Connection connection) {
+    connection.ref.unauth();
+    factory.discard(connection.ref);
+  }
+
+  private void remove(Connection connection) {
+    connections.remove(connection.uid);
+    connectionsByRef.remove(connection.ref);
+    connection.cancelExpiry();
+  }
+
+  private static final class Connection {
+
+    private final String uid;
+    private final Firebase ref;
+    private final List<ConnectionHandler> pending = new ArrayList<ConnectionHandler>();
+    private String token;
+    private boolean authenticated;
+    // Acquires not yet released
+    private int leases;
+    private long lastUsedMillis;
+    private ExpiryWheel.Timeout expiry;
+
+    Connection(String uid, Firebase ref) {
+      this.uid = uid;
+      this.ref = ref;
+    }
+
+    boolean isIdle() {
+      return leases == 0 && pending.isEmpty();
+    }
+
+    void cancelExpiry() {
+      if (expiry != null) {
+        expiry.cancel();
+        expiry = null;
+      }
+    }
+
+    List<ConnectionHandler> takePending() {
+      List<ConnectionHandler> handlers = new ArrayList<ConnectionHandler>(pending);
+      pending.clear();
+      return handlers;
+    }
+  }
+
+}
@@ -2,12 +2,10 @@ package com.firebase.simplelogin;
 
 import com.firebase.client.FirebaseError;
 import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+import com.firebase.simplelogin.enums.ValidationRule;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Instances of FirebaseSimpleLoginError are passed to callbacks when an operation failed.
  * They contain a description of the specific error that occurred.
@@ -16,21 +14,9 @@ public class FirebaseSimpleLoginError {
 
   private FirebaseSimpleLoginErrorCode code;
   private String message;
+  private ValidationRule validationRule;
+  private FirebaseSimpleLoginError cause;
 
-  private static final Map<FirebaseSimpleLoginErrorCode, String> errorReasons;
-  static {
-    errorReasons = new HashMap<FirebaseSimpleLoginErrorCode, String>();
-    errorReasons.put(FirebaseSimpleLoginErrorCode.DataStale, "The transaction needs to be run again with current data");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.OperationFailed, "The server indicated that this operation failed");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.PermissionDenied, "This client does not have permission to perform this operation");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.Disconnected, "The operation had to be aborted due to a network disconnect");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.Preempted, "The active or pending auth credentials were superseded by another call to auth");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.ExpiredToken, "The supplied auth token has expired");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.InvalidToken, "The supplied auth token was invalid");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.MaxRetries, "The transaction had too many retries");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.OverriddenBySet, "The transaction was overridden by a subsequent set");
-    errorReasons.put(FirebaseSimpleLoginErrorCode.Unknown, "An unknown error occurred");
-  }
 
   private FirebaseSimpleLoginError(FirebaseSimpleLoginErrorCode code, String message) {
     this.code = code;
@@ -51,13 +37,72 @@ public class FirebaseSimpleLoginError {
     return message;
   }
 
+  /**
+   * @return The pre-flight validation rule that rejected the input, or null if the error did not come from
+   * local validation
+   */
+  public ValidationRule getValidationRule() {
+    return validationRule;
+  }
+
+  /**
+   * @return For errors reporting that an operation only partly succeeded, such as UserCreatedLoginFailed, the error
+   * that stopped the rest of it; otherwise null
+   */
+  public FirebaseSimpleLoginError getCause() {
+    return cause;
+  }
+
 
   public static FirebaseSimpleLoginError errorFromCode(FirebaseSimpleLoginErrorCode errorCode) {
-    String message = "";
-    if (errorCode != null && errorReasons.containsKey(errorCode)) {
-      message = errorReasons.get(errorCode);
+    return new FirebaseSimpleLoginError(errorCode, reasonFor(errorCode));
+  }
+
+  static FirebaseSimpleLoginError errorFromValidationRule(ValidationRule rule) {
+    FirebaseSimpleLoginErrorCode errorCode = FirebaseSimpleLoginErrorCode.InvalidPassword;
+    String message;
+    switch (rule) {
+      case EMAIL_REQUIRED:
+        errorCode = FirebaseSimpleLoginErrorCode.InvalidEmail;
+        message = "An email address is required";
+        break;
+      case EMAIL_SYNTAX:
+        errorCode = FirebaseSimpleLoginErrorCode.InvalidEmail;
+        message = "The email address is not valid";
+        break;
+      case EMAIL_DOMAIN:
+        errorCode = FirebaseSimpleLoginErrorCode.InvalidEmail;
+        message = "The email address does not have a valid domain";
+        break;
+      case EMAIL_BLOCKED_DOMAIN:
+        errorCode = FirebaseSimpleLoginErrorCode.InvalidEmail;
+        message = "Email addresses from this domain are not accepted";
+        break;
+      case PASSWORD_REQUIRED:
+        message = "A password is required";
+        break;
+      case PASSWORD_TOO_SHORT:
+        message = "The password is too short";
+        break;
+      case PASSWORD_TOO_LONG:
+        message = "The password is too long";
+        break;
+      case PASSWORD_MISSING_LETTER:
+        message = "The password must contain a letter";
+        break;
+      default:
+        message = "The password must contain a digit";
+        break;
     }
-    return new FirebaseSimpleLoginError(errorCode, message);
+    FirebaseSimpleLoginError error = new FirebaseSimpleLoginError(errorCode, message);
+    error.validationRule = rule;
+    return error;
+  }
+
+  static FirebaseSimpleLoginError errorFromPartialFailure(FirebaseSimpleLoginErrorCode errorCode, FirebaseSimpleLoginError cause) {
+    FirebaseSimpleLoginError error = new FirebaseSimpleLoginError(errorCode, reasonFor(errorCode));
+    error.cause = cause;
+    return error;
   }
 
   public static FirebaseSimpleLoginError errorFromResponse(JSONObject response) {
@@ -96,13 +141,10 @@ public class FirebaseSimpleLoginError {
       }
       catch (JSONException e) {
         // Invalid response. Default 'Unknown' error code will be used.
-        e.printStackTrace();
       }
     }
 
-    if (errorCode != null && errorReasons.containsKey(errorCode)) {
-      message = errorReasons.get(errorCode);
-    }
+    message = reasonFor(errorCode);
     return new FirebaseSimpleLoginError(errorCode, message);
   }
 
@@ -145,9 +187,49 @@ public class FirebaseSimpleLoginError {
       }
     }
 
-    if (errorCode != null && errorReasons.containsKey(errorCode)) {
-      message = errorReasons.get(errorCode);
-    }
+    message = reasonFor(errorCode);
     return new FirebaseSimpleLoginError(errorCode, message);
   }
+
+  private static String reasonFor(FirebaseSimpleLoginErrorCode errorCode) {
+    if (errorCode == null) {
+      return "";
+    }
+    // A switch rather than a static map, so nothing is built until an error actually occurs
+    switch (errorCode) {
+      case DataStale:
+        return "The transaction needs to be run again with current data";
+      case OperationFailed:
+        return "The server indicated that this operation failed";
+      case PermissionDenied:
+        return "This client does not have permission to perform this operation";
+      case Disconnected:
+        return "The operation had to be aborted due to a network disconnect";
+      case Preempted:
+        return "The active or pending auth credentials were superseded by another call to auth";
+      case ExpiredToken:
+        return "The supplied auth token has expired";
+      case InvalidToken:
+        return "The supplied auth token was invalid";
+      case MaxRetries:
+        return "The transaction had too many retries";
+      case OverriddenBySet:
+        return "The transaction was overridden by a subsequent set";
+      case RateLimited:
+        return "Too many requests; the client-side rate limit was exceeded";
+      case ClientClosed:
+        return "This SimpleLogin instance has been shut down";
+      case PoolExhausted:
+        return "Every pooled connection is in use";
+      case UserCreatedLoginFailed:
+        return "The user was created, but could not be logged in";
+      case PasswordChangedLoginFailed:
+        return "The password was changed, but the user could not be logged in with it";
+      case Unknown:
+        return "An unknown error occurred";
+      default:
+        return "";
+    }
+  }
+
 }
@@ -96,6 +96,15 @@ public class FirebaseSimpleLoginUser {
     return authToken;
   }
 
+  /**
+   * The claims encoded in the auth token, decoded locally without a network request.
+   *
+   * @return the authToken claims, or null if there is no token or it could not be decoded
+   */
+  public FirebaseTokenClaims getAuthTokenClaims() {
+    return FirebaseTokenClaims.fromToken(authToken);
+  }
+
   /**
    * Optional; the user's email if this user was authenticated via Firebase's email/password provider; null otherwise.
    *
@@ -0,0 +1,164 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.Provider;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Claims decoded from a Firebase auth token (a JSON Web Token).
+ *
+ * The token signature is not verified; Firebase does that when the token is passed to Firebase.auth(). These
+ * claims are only used to avoid round trips for tokens that are obviously unusable, and to let callers read
+ * token data without another request.
+ *
+ * @author Firebase
+ *
+ */
+public class FirebaseTokenClaims {
+
+  private static final int CACHE_SIZE = 64;
+
+  /**
+   * Allowance for clock skew between this device and Firebase when checking expiry.
+   */
+  private static final long CLOCK_SKEW_MILLIS = 60 * 1000;
+
+  private static final Map<String, FirebaseTokenClaims> cache = new LinkedHashMap<String, FirebaseTokenClaims>(CACHE_SIZE, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, FirebaseTokenClaims> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  };
+
+  private final long issuedAtMillis;
+  private final long expiresAtMillis;
+  private final Map<String, Object> data;
+  private final String dataJson;
+
+  private FirebaseTokenClaims(long issuedAtMillis, long expiresAtMillis, Map<String, Object> data, String dataJson) {
+    this.issuedAtMillis = issuedAtMillis;
+    this.expiresAtMillis = expiresAtMillis;
+    this.data = Collections.unmodifiableMap(data);
+    this.dataJson = dataJson;
+  }
+
+  /**
+   * Decode the claims of a Firebase auth token. Decoded claims are cached, so repeated calls for the same token are
+   * cheap.
+   *
+   * @param token Firebase auth token.
+   * @return The decoded claims, or null if the token is not a well-formed JWT.
+   */
+  public static FirebaseTokenClaims fromToken(String token) {
+    if (token == null) {
+      return null;
+    }
+    synchronized (cache) {
+      FirebaseTokenClaims claims = cache.get(token);
+      if (claims != null) {
+        return claims;
+      }
+    }
+    FirebaseTokenClaims claims = decode(token);
+    if (claims != null) {
+      synchronized (cache) {
+        cache.put(token, claims);
+      }
+    }
+    return claims;
+  }
+
+  private static FirebaseTokenClaims decode(String token) {
+    int firstDot = token.indexOf('.');
+    int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+    if (secondDot < 0) {
+      return null;
+    }
+    try {
+      byte[] payloadBytes = FirebaseUtils.decodeBase64Url(token, firstDot + 1, secondDot);
+      if (payloadBytes == null) {
+        return null;
+      }
+      JSONObject payload = new JSONObject(new String(payloadBytes, "UTF-8"));
+      long issuedAt = payload.has("iat") ? payload.getLong("iat") * 1000 : 0;
+      long expiresAt = payload.has("exp") ? payload.getLong("exp") * 1000 : 0;
+      JSONObject dataObject = payload.has("d") ? payload.getJSONObject("d") : new JSONObject();
+      return new FirebaseTokenClaims(issuedAt, expiresAt, FirebaseUtils.toMap(dataObject), dataObject.toString());
+    }
+    catch (JSONException e) {
+      return null;
+    }
+    catch (UnsupportedEncodingException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return When the token was issued, in milliseconds since the epoch; 0 if unknown.
+   */
+  public long getIssuedAt() {
+    return issuedAtMillis;
+  }
+
+  /**
+   * @return When the token expires, in milliseconds since the epoch; 0 if the token has no explicit expiry.
+   */
+  public long getExpiresAt() {
+    return expiresAtMillis;
+  }
+
+  /**
+   * @return When Firebase will stop accepting the token, allowing for clock skew; 0 if the token has no explicit
+   * expiry. Without one the session length is a Firebase setting the client cannot see, so only Firebase decides.
+   */
+  long getSessionEndsAt() {
+    return expiresAtMillis != 0 ? expiresAtMillis + CLOCK_SKEW_MILLIS : 0;
+  }
+
+  /**
+   * @param nowMillis Current time, in milliseconds since the epoch.
+   * @return true if the token has an explicit expiry that has passed, allowing for clock skew. This is the only
+   * expiry check made locally, so login, restore and the session expiry timer always agree.
+   */
+  public boolean isExpired(long nowMillis) {
+    long endsAt = getSessionEndsAt();
+    return endsAt != 0 && nowMillis > endsAt;
+  }
+
+  /**
+   * @return The uid claim, or null if absent.
+   */
+  public String getUid() {
+    Object uid = data.get("uid");
+    return uid != null ? uid.toString() : null;
+  }
+
+  /**
+   * @return The provider claim, or INVALID if absent or unknown.
+   */
+  public Provider getProvider() {
+    Object provider = data.get("provider");
+    return provider != null ? Provider.fromString(provider.toString()) : Provider.INVALID;
+  }
+
+  /**
+   * @return All custom data ("d") claims of the token.
+   */
+  public Map<String, Object> getData() {
+    return data;
+  }
+
+  /**
+   * @return A fresh, mutable copy of the data claims as JSON.
+   */
+  JSONObject getDataJson() throws JSONException {
+    return new JSONObject(dataJson);
+  }
+
+}
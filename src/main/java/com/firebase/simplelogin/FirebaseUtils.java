@@ -1,15 +1,15 @@
 package com.firebase.simplelogin;
 
-import android.text.TextUtils;
-
 import com.firebase.client.Firebase;
 import com.firebase.simplelogin.enums.Provider;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLDecoder;
 import java.util.*;
 
 class FirebaseUtils {
@@ -36,12 +36,80 @@ class FirebaseUtils {
   }
 
   public static Provider providerForString(String provider) {
-    if (!TextUtils.isEmpty(provider)) {
-      return Provider.valueOf(provider.trim().toUpperCase());
+    return Provider.fromString(provider);
+  }
+
+  /**
+   * Decode the unpadded base64url characters in s[start, end).
+   *
+   * @return The decoded bytes, or null if the input contains invalid characters.
+   */
+  public static byte[] decodeBase64Url(String s, int start, int end) {
+    int length = end - start;
+    while (length > 0 && s.charAt(start + length - 1) == '=') {
+      length--;
     }
-    else {
-      return Provider.INVALID;
+    if (length % 4 == 1) {
+      return null;
+    }
+    byte[] out = new byte[length * 3 / 4];
+    int buffer = 0;
+    int bits = 0;
+    int pos = 0;
+    for (int i = start; i < start + length; i++) {
+      int value = base64UrlValue(s.charAt(i));
+      if (value < 0) {
+        return null;
+      }
+      buffer = (buffer << 6) | value;
+      bits += 6;
+      if (bits >= 8) {
+        bits -= 8;
+        out[pos++] = (byte) (buffer >> bits);
+      }
+    }
+    return out;
+  }
+
+  private static int base64UrlValue(char c) {
+    if (c >= 'A' && c <= 'Z') {
+      return c - 'A';
     }
+    else if (c >= 'a' && c <= 'z') {
+      return c - 'a' + 26;
+    }
+    else if (c >= '0' && c <= '9') {
+      return c - '0' + 52;
+    }
+    else if (c == '-' || c == '+') {
+      return 62;
+    }
+    else if (c == '_' || c == '/') {
+      return 63;
+    }
+    return -1;
+  }
+
+  /**
+   * Parse an application/x-www-form-urlencoded string, e.g. an OAuth token response.
+   */
+  public static Map<String, String> parseFormEncoded(String body) {
+    Map<String, String> map = new HashMap<String, String>();
+    if (body == null) {
+      return map;
+    }
+    for (String pair : body.trim().split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0) {
+        try {
+          map.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+        }
+        catch (UnsupportedEncodingException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+    return map;
   }
 
   // https://gist.github.com/codebutler/2339666
@@ -0,0 +1,173 @@
+package com.firebase.simplelogin;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URL;
+
+/**
+ * Process-wide HTTP transport for auth server requests.
+ *
+ * All requests share one pooled client, so keep-alive connections and the TLS session cache of its socket factory
+ * are reused across requests and SimpleLogin instances.
+ *
+ * @author Firebase
+ *
+ */
+class HttpTransport {
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 20000;
+  private static final int SOCKET_TIMEOUT_MILLIS = 20000;
+  private static final int MAX_CONNECTIONS_PER_ROUTE = 8;
+  private static final int MAX_TOTAL_CONNECTIONS = 16;
+
+  private static final ResponseHandler<Void> DISCARD_HANDLER = new ResponseHandler<Void>() {
+    public Void handleResponse(HttpResponse response) {
+      return null;
+    }
+  };
+
+  private static HttpTransport instance;
+  private static int references;
+  // SimpleLogin.prewarm() holds one reference until the next retain() takes it over
+  private static boolean prewarmReference;
+
+  private final HttpClient httpClient;
+
+  private HttpTransport() {
+    HttpParams params = new BasicHttpParams();
+    HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT_MILLIS);
+    HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT_MILLIS);
+    ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS_PER_ROUTE));
+    ConnManagerParams.setMaxTotalConnections(params, MAX_TOTAL_CONNECTIONS);
+
+    SchemeRegistry registry = new SchemeRegistry();
+    registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+    registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+    httpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+  }
+
+  /**
+   * Register a user of the shared transport, creating it if needed; balanced by release().
+   *
+   * @return The shared transport.
+   */
+  static synchronized HttpTransport retain() {
+    if (prewarmReference) {
+      prewarmReference = false;
+    }
+    else {
+      references++;
+    }
+    if (instance == null) {
+      instance = new HttpTransport();
+    }
+    return instance;
+  }
+
+  /**
+   * Retain the shared transport on behalf of SimpleLogin.prewarm(). Only one such reference is held; it is handed
+   * over to the next retain(), so the warmed connections stay open until the first SimpleLogin uses them.
+   *
+   * @return The shared transport.
+   */
+  static synchronized HttpTransport retainForPrewarm() {
+    if (prewarmReference) {
+      return instance;
+    }
+    prewarmReference = true;
+    references++;
+    if (instance == null) {
+      instance = new HttpTransport();
+    }
+    return instance;
+  }
+
+  /**
+   * Register a user of the shared transport only if it is still in use, for background work that must not bring a
+   * released transport back to life.
+   *
+   * @return The shared transport, or null if it has been released; in that case release() must not be called.
+   */
+  static synchronized HttpTransport retainIfOpen() {
+    if (instance == null) {
+      return null;
+    }
+    references++;
+    return instance;
+  }
+
+  /**
+   * Unregister a user of the shared transport, closing its connections once no users remain.
+   */
+  static synchronized void release() {
+    if (references > 0 && --references == 0 && instance != null) {
+      instance.httpClient.getConnectionManager().shutdown();
+      instance = null;
+    }
+  }
+
+  /**
+   * Perform a GET request and parse the response body as JSON.
+   *
+   * @return The parsed response, or null if the response was not a successful JSON response.
+   */
+  JSONObject get(String url, AsyncLogger log, Trace trace) throws IOException {
+    HttpGet request = new HttpGet(url);
+    trace.inject(request);
+    return httpClient.execute(request, new JsonBasicResponseHandler(log, trace));
+  }
+
+  /**
+   * Check that apiHost accepts connections and answers HTTP requests.
+   *
+   * @return true if the host returned any HTTP response.
+   */
+  boolean probe(String apiHost) {
+    try {
+      httpClient.execute(new HttpHead(apiHost + "/"), DISCARD_HANDLER);
+      return true;
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Resolve and connect to apiHost in the background, leaving a pooled keep-alive connection and a cached TLS
+   * session behind for the first real request.
+   */
+  void prewarm(final String apiHost) {
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          InetAddress.getAllByName(new URL(apiHost).getHost());
+          httpClient.execute(new HttpHead(apiHost + "/"), DISCARD_HANDLER);
+        }
+        catch (IOException e) {
+          // Best effort; the first real request will connect as usual.
+        }
+      }
+    }, "FirebaseSimpleLogin-Prewarm");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+}
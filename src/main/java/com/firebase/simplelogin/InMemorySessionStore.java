@@ -0,0 +1,51 @@
+package com.firebase.simplelogin;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Session store that keeps sessions in memory and sends invalidation messages to every listener on each change, on
+ * the thread that made the change.
+ *
+ * Useful as a stand-in for a shared session service in tests: SimpleLogin instances configured with the same
+ * InMemorySessionStore behave like clients on different nodes sharing one store.
+ *
+ * @author Firebase
+ *
+ */
+public class InMemorySessionStore implements SimpleLoginSessionStore {
+
+  private final ConcurrentMap<String, String> values = new ConcurrentHashMap<String, String>();
+  private final CopyOnWriteArrayList<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+
+  public String get(String key) {
+    return values.get(key);
+  }
+
+  public void put(String key, String value) {
+    values.put(key, value);
+    invalidate(key);
+  }
+
+  public void remove(String key) {
+    if (values.remove(key) != null) {
+      invalidate(key);
+    }
+  }
+
+  public void addInvalidationListener(InvalidationListener listener) {
+    listeners.addIfAbsent(listener);
+  }
+
+  public void removeInvalidationListener(InvalidationListener listener) {
+    listeners.remove(listener);
+  }
+
+  private void invalidate(String key) {
+    for (InvalidationListener listener : listeners) {
+      listener.invalidated(key);
+    }
+  }
+
+}
@@ -10,6 +10,9 @@ import org.apache.http.util.EntityUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+import com.firebase.simplelogin.enums.LogLevel;
+
 /**
  * Basic JSON http response handler.
  *
@@ -18,25 +21,45 @@ import org.json.JSONObject;
  */
 class JsonBasicResponseHandler implements ResponseHandler<JSONObject> {
 
+  private final AsyncLogger log;
+  private final Trace trace;
+
+  JsonBasicResponseHandler(AsyncLogger log, Trace trace) {
+    this.log = log;
+    this.trace = trace;
+  }
+
   public JSONObject handleResponse(HttpResponse response) {
     JSONObject result = null;
-    if (response == null || response.getStatusLine().getStatusCode() >= 300) {
+    if (response == null) {
+      return result;
+    }
+    int statusCode = response.getStatusLine().getStatusCode();
+    if (statusCode >= 300) {
+      if (log.isEnabled(LogLevel.WARN)) {
+        log.warn("Auth server responded with HTTP " + statusCode, null);
+      }
       return result;
     }
     HttpEntity entity = response.getEntity();
+    Trace jsonTrace = trace.child("json");
     try {
       if(entity != null) {
         String entityString = EntityUtils.toString(entity);
-        System.out.println(entityString);
+        if (log.isEnabled(LogLevel.DEBUG)) {
+          // The body contains auth tokens, so only its size is logged
+          log.debug("Auth server responded with HTTP " + statusCode + ", " + entityString.length() + " chars");
+        }
         result = new JSONObject(entityString);
       }
     } catch (JSONException e) {
-      e.printStackTrace();
+      log.warn("Unable to parse auth server response", e);
     } catch (ParseException e) {
-      e.printStackTrace();
+      log.warn("Unable to read auth server response", e);
     } catch (IOException e) {
-      e.printStackTrace();
+      log.warn("Unable to read auth server response", e);
     }
+    jsonTrace.finish(result == null ? FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.Unknown) : null);
     return result;
   }
 
@@ -0,0 +1,218 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.ValidationRule;
+
+import java.util.Collection;
+
+/**
+ * Checks emails and passwords locally against a compiled SimpleLoginValidationPolicy, so that requests the auth
+ * server can only reject are never sent. Checks scan the input in place and do not allocate. The blocked domain
+ * filter is only built by the first email check that needs it, so creating a SimpleLogin does not pay for it.
+ *
+ * Without a policy only the historical checks are made: an email needs an "@" after its first character, and a
+ * password must not be blank.
+ *
+ * @author Firebase
+ *
+ */
+final class PreflightValidator {
+
+  private static final int MAX_EMAIL_LENGTH = 254;
+  private static final int MAX_LOCAL_PART_LENGTH = 64;
+  private static final int MAX_DOMAIN_LENGTH = 253;
+  private static final int MAX_LABEL_LENGTH = 63;
+  private static final String ATEXT_SYMBOLS = "!#$%&'*+-/=?^_`{|}~";
+
+  private final boolean strict;
+  private final boolean internationalEmails;
+  private final int minPasswordLength;
+  private final int maxPasswordLength;
+  private final boolean requireLetter;
+  private final boolean requireDigit;
+  private final Collection<String> blockedDomainList;
+  private final double blockedDomainFalsePositiveRate;
+  private volatile DomainBloomFilter blockedDomains;
+  private volatile boolean blockedDomainsBuilt;
+
+  private PreflightValidator(SimpleLoginValidationPolicy policy) {
+    this.strict = policy != null;
+    this.internationalEmails = policy == null || policy.isInternationalEmails();
+    this.minPasswordLength = policy == null ? 1 : policy.getMinPasswordLength();
+    this.maxPasswordLength = policy == null ? 0 : policy.getMaxPasswordLength();
+    this.requireLetter = policy != null && policy.isRequireLetter();
+    this.requireDigit = policy != null && policy.isRequireDigit();
+    // The policy replaces rather than mutates its list, so this stays a snapshot
+    this.blockedDomainList = policy == null ? null : policy.getBlockedDomains();
+    this.blockedDomainFalsePositiveRate = policy == null ? 0 : policy.getBlockedDomainFalsePositiveRate();
+    this.blockedDomainsBuilt = policy == null;
+  }
+
+  static PreflightValidator compile(SimpleLoginValidationPolicy policy) {
+    return new PreflightValidator(policy);
+  }
+
+  /**
+   * @return The first rule the email breaks, or null if it is acceptable.
+   */
+  ValidationRule checkEmail(String email) {
+    if (isBlank(email)) {
+      return ValidationRule.EMAIL_REQUIRED;
+    }
+    if (!strict) {
+      return email.indexOf('@') > 0 ? null : ValidationRule.EMAIL_SYNTAX;
+    }
+    int length = email.length();
+    if (length > MAX_EMAIL_LENGTH) {
+      return ValidationRule.EMAIL_SYNTAX;
+    }
+    int at = email.lastIndexOf('@');
+    if (at <= 0 || at > MAX_LOCAL_PART_LENGTH || at == length - 1) {
+      return ValidationRule.EMAIL_SYNTAX;
+    }
+    // Dot-atom local part; quoted local parts are not supported by the auth server
+    char previous = '.';
+    for (int i = 0; i < at; i++) {
+      char c = email.charAt(i);
+      if (c == '.' ? previous == '.' : !isAtext(c)) {
+        return ValidationRule.EMAIL_SYNTAX;
+      }
+      previous = c;
+    }
+    if (previous == '.') {
+      return ValidationRule.EMAIL_SYNTAX;
+    }
+    if (!isValidDomain(email, at + 1, length)) {
+      return ValidationRule.EMAIL_DOMAIN;
+    }
+    DomainBloomFilter blockedDomains = blockedDomains();
+    if (blockedDomains != null && blockedDomains.mightContainDomainOrParent(email, at + 1, length)) {
+      return ValidationRule.EMAIL_BLOCKED_DOMAIN;
+    }
+    return null;
+  }
+
+  /**
+   * Check a password used to log in. Only blank passwords are rejected, so that accounts created under an older
+   * policy keep working.
+   *
+   * @return The first rule the password breaks, or null if it is acceptable.
+   */
+  ValidationRule checkPassword(String password) {
+    return isBlank(password) ? ValidationRule.PASSWORD_REQUIRED : null;
+  }
+
+  /**
+   * Check a password an account is about to be created or updated with.
+   *
+   * @return The first rule the password breaks, or null if it is acceptable.
+   */
+  ValidationRule checkNewPassword(String password) {
+    if (isBlank(password)) {
+      return ValidationRule.PASSWORD_REQUIRED;
+    }
+    int length = password.codePointCount(0, password.length());
+    if (length < minPasswordLength) {
+      return ValidationRule.PASSWORD_TOO_SHORT;
+    }
+    if (maxPasswordLength > 0 && length > maxPasswordLength) {
+      return ValidationRule.PASSWORD_TOO_LONG;
+    }
+    if (requireLetter || requireDigit) {
+      boolean hasLetter = false;
+      boolean hasDigit = false;
+      for (int i = 0; i < password.length(); i++) {
+        char c = password.charAt(i);
+        hasLetter |= Character.isLetter(c);
+        hasDigit |= Character.isDigit(c);
+      }
+      if (requireLetter && !hasLetter) {
+        return ValidationRule.PASSWORD_MISSING_LETTER;
+      }
+      if (requireDigit && !hasDigit) {
+        return ValidationRule.PASSWORD_MISSING_DIGIT;
+      }
+    }
+    return null;
+  }
+
+  private DomainBloomFilter blockedDomains() {
+    if (!blockedDomainsBuilt) {
+      synchronized (this) {
+        if (!blockedDomainsBuilt) {
+          blockedDomains = DomainBloomFilter.build(blockedDomainList, blockedDomainFalsePositiveRate);
+          blockedDomainsBuilt = true;
+        }
+      }
+    }
+    return blockedDomains;
+  }
+
+  private boolean isAtext(char c) {
+    if (c < 128) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || ATEXT_SYMBOLS.indexOf(c) >= 0;
+    }
+    return internationalEmails && !Character.isWhitespace(c) && !Character.isISOControl(c) && !Character.isSpaceChar(c);
+  }
+
+  /**
+   * Host name syntax: two or more dot separated labels of letters, digits and inner hyphens, with a top level label
+   * that is not all digits. Unicode labels are checked by character class only; their punycode length is not.
+   */
+  private boolean isValidDomain(String s, int start, int end) {
+    if (end - start > MAX_DOMAIN_LENGTH) {
+      return false;
+    }
+    int labels = 0;
+    int labelStart = start;
+    boolean numeric = true;
+    for (int i = start; i <= end; i++) {
+      char c = i < end ? s.charAt(i) : '.';
+      if (i == end || DomainBloomFilter.isDot(c)) {
+        int labelLength = i - labelStart;
+        if (labelLength == 0 || labelLength > MAX_LABEL_LENGTH || s.charAt(labelStart) == '-' || s.charAt(i - 1) == '-') {
+          return false;
+        }
+        if (i < end) {
+          numeric = true;
+        }
+        labels++;
+        labelStart = i + 1;
+      }
+      else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-') {
+        numeric = false;
+      }
+      else if (c >= '0' && c <= '9') {
+        // Digits keep the label numeric
+      }
+      else if (c >= 128 && internationalEmails && isIdnCharacter(c)) {
+        numeric = false;
+      }
+      else {
+        return false;
+      }
+    }
+    return labels >= 2 && !numeric;
+  }
+
+  private static boolean isIdnCharacter(char c) {
+    if (Character.isLetterOrDigit(c) || Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+      return true;
+    }
+    int type = Character.getType(c);
+    return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK || type == Character.ENCLOSING_MARK;
+  }
+
+  private static boolean isBlank(String s) {
+    if (s == null) {
+      return true;
+    }
+    for (int i = 0; i < s.length(); i++) {
+      // Same notion of whitespace as String.trim()
+      if (s.charAt(i) > ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
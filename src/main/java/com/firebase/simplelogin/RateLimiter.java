@@ -0,0 +1,116 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.Provider;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Client-side token bucket rate limiter for auth server requests.
+ *
+ * Buckets are process-wide and keyed by (Firebase namespace, endpoint, provider, rate, burst), so every endpoint and
+ * provider has its own budget, a burst from one Firebase never delays requests made for another, and instances
+ * configured with different limits do not share a bucket. Every request sent to the auth server takes a permit,
+ * including endpoint retries and the follow-up requests of a chained operation. Requests over budget
+ * are either delayed until a token frees up or, if that would take longer than the configured maximum wait,
+ * rejected outright.
+ *
+ * @author Firebase
+ *
+ */
+class RateLimiter {
+
+  /**
+   * Returned by reserve() when a request must be rejected.
+   */
+  static final long REJECTED = -1;
+
+  private static final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+
+  private final String namespace;
+  private final double permitsPerSecond;
+  private final int burst;
+  private final long maxWaitMillis;
+
+  RateLimiter(String namespace, double permitsPerSecond, int burst, long maxWaitMillis) {
+    this.namespace = namespace;
+    this.permitsPerSecond = permitsPerSecond;
+    this.burst = Math.max(1, burst);
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  boolean isEnabled() {
+    return permitsPerSecond > 0;
+  }
+
+  /**
+   * Reserve a permit for a request.
+   *
+   * @return The number of milliseconds to wait before sending the request, or REJECTED.
+   */
+  long reserve(String urlPath, Provider provider) {
+    if (!isEnabled()) {
+      return 0;
+    }
+    String key = namespace + "|" + urlPath + "|" + provider + "|" + permitsPerSecond + "|" + burst;
+    Bucket bucket = buckets.get(key);
+    if (bucket == null) {
+      Bucket newBucket = new Bucket(permitsPerSecond, burst);
+      bucket = buckets.putIfAbsent(key, newBucket);
+      if (bucket == null) {
+        bucket = newBucket;
+      }
+    }
+    return bucket.reserve(System.nanoTime(), maxWaitMillis);
+  }
+
+  /**
+   * Reserve a permit and wait for it on the calling thread, for requests sent from a request thread.
+   *
+   * @return false if the request must be rejected.
+   */
+  boolean acquire(String urlPath, Provider provider) {
+    long delay = reserve(urlPath, provider);
+    if (delay == REJECTED) {
+      return false;
+    }
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Bucket {
+
+    private final double permitsPerNano;
+    private final double capacity;
+    private double permits;
+    private long lastRefillNanos;
+
+    Bucket(double permitsPerSecond, int capacity) {
+      this.permitsPerNano = permitsPerSecond / 1e9;
+      this.capacity = capacity;
+      this.permits = capacity;
+      this.lastRefillNanos = System.nanoTime();
+    }
+
+    synchronized long reserve(long nowNanos, long maxWaitMillis) {
+      permits = Math.min(capacity, permits + (nowNanos - lastRefillNanos) * permitsPerNano);
+      lastRefillNanos = nowNanos;
+      // Permits may go negative: a negative balance is the queue of requests already waiting for a permit
+      long waitMillis = permits >= 1 ? 0 : (long) Math.ceil((1 - permits) / permitsPerNano / 1e6);
+      if (waitMillis > maxWaitMillis) {
+        return REJECTED;
+      }
+      permits -= 1;
+      return waitMillis;
+    }
+  }
+
+}
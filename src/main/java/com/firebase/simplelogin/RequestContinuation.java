@@ -0,0 +1,18 @@
+package com.firebase.simplelogin;
+
+import org.json.JSONObject;
+
+/**
+ * Follow-up work for an auth server request, run on the same request thread before the result is handed to the
+ * RequestHandler, so that a chain of dependent requests costs a single callback hop.
+ */
+interface RequestContinuation {
+
+  /**
+   * @param response The successful response of the previous step.
+   * @return The response to deliver to the RequestHandler, or null if the chain failed.
+   * @throws AuthRequestException If a follow-up request failed; its error is delivered to the RequestHandler.
+   */
+  public JSONObject proceed(JSONObject response) throws AuthRequestException;
+
+}
@@ -0,0 +1,127 @@
+package com.firebase.simplelogin;
+
+import java.util.LinkedList;
+
+import com.firebase.simplelogin.enums.RequestPriority;
+
+/**
+ * Shared daemon threads for blocking auth server requests, with strict priority for interactive requests.
+ *
+ * Waiting interactive requests are always started before waiting background requests, and background requests may
+ * occupy at most all but one thread, so an interactive request never waits behind a full pool of batch work.
+ *
+ * @author Firebase
+ *
+ */
+class RequestScheduler {
+
+  // Same parallelism as AsyncTask's pool, which requests used to run on
+  private static final int THREADS = 5;
+  private static final int MAX_BACKGROUND_THREADS = THREADS - 1;
+
+  private static RequestScheduler instance;
+
+  private final LinkedList<Job> interactive = new LinkedList<Job>();
+  private final LinkedList<Job> background = new LinkedList<Job>();
+  private int runningBackground;
+
+  private RequestScheduler() {
+    for (int i = 1; i <= THREADS; i++) {
+      startWorker("FirebaseSimpleLogin-Request-" + i);
+    }
+  }
+
+  static synchronized RequestScheduler get() {
+    if (instance == null) {
+      instance = new RequestScheduler();
+    }
+    return instance;
+  }
+
+  /**
+   * @param task Task to run on a request thread.
+   * @param priority Scheduling class of the task.
+   * @param log Logger for exceptions thrown by the task.
+   */
+  synchronized void execute(Runnable task, RequestPriority priority, AsyncLogger log) {
+    if (priority == RequestPriority.BACKGROUND) {
+      background.addLast(new Job(task, true, log));
+    }
+    else {
+      interactive.addLast(new Job(task, false, log));
+    }
+    notifyAll();
+  }
+
+  private void startWorker(String name) {
+    Thread thread = new Thread(new Worker(), name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private synchronized Job take() throws InterruptedException {
+    while (true) {
+      if (!interactive.isEmpty()) {
+        return interactive.removeFirst();
+      }
+      if (!background.isEmpty() && runningBackground < MAX_BACKGROUND_THREADS) {
+        runningBackground++;
+        return background.removeFirst();
+      }
+      wait();
+    }
+  }
+
+  private synchronized void finished(Job job) {
+    if (job.background) {
+      runningBackground--;
+      notifyAll();
+    }
+  }
+
+  private static final class Job {
+
+    private final Runnable task;
+    private final boolean background;
+    private final AsyncLogger log;
+
+    Job(Runnable task, boolean background, AsyncLogger log) {
+      this.task = task;
+      this.background = background;
+      this.log = log;
+    }
+  }
+
+  private class Worker implements Runnable {
+
+    public void run() {
+      boolean interrupted = false;
+      try {
+        while (true) {
+          Job job = take();
+          try {
+            job.task.run();
+          }
+          catch (RuntimeException e) {
+            // Keep the thread alive; the task's own error handling has already failed
+            job.log.error("Uncaught exception in auth request task", e);
+          }
+          finally {
+            finished(job);
+          }
+        }
+      }
+      catch (InterruptedException e) {
+        interrupted = true;
+        Thread.currentThread().interrupt();
+      }
+      finally {
+        if (!interrupted) {
+          // An Error escaped a task and is ending this thread; keep the pool at full strength
+          startWorker(Thread.currentThread().getName());
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+package com.firebase.simplelogin;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.firebase.client.FirebaseError;
+import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+
+/**
+ * Process-wide set of tokens Firebase has revoked or rejected, so that every SimpleLogin instance and pooled
+ * connection holding one fails locally instead of sending it to Firebase again.
+ *
+ * Tokens are kept as SHA-256 hashes, truncated to 128 bits, until they would have expired anyway, and at most
+ * MAX_TOKENS are remembered; beyond that the least recently revoked are forgotten. The hash is cryptographic because
+ * the set is shared with server code handling many users' tokens: a token an attacker gets rejected must not be able
+ * to collide with, and so lock out, someone else's valid token.
+ *
+ * @author Firebase
+ *
+ */
+class RevokedTokens {
+
+  private static final int MAX_TOKENS = 4096;
+  // How long a token without a known expiry is remembered
+  private static final long DEFAULT_RETENTION_MILLIS = 24 * 60 * 60 * 1000;
+  private static final int HASH_BYTES = 16;
+
+  private static final Map<String, Revocation> revoked = new LinkedHashMap<String, Revocation>(64, 0.75f, false) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Revocation> eldest) {
+      return size() > MAX_TOKENS;
+    }
+  };
+
+  private RevokedTokens() {}
+
+  /**
+   * Remember that Firebase revoked or rejected a token. Errors that say nothing about the token itself, such as a
+   * disconnect or a preempted auth, are ignored.
+   */
+  static void record(String token, FirebaseError error) {
+    if (token == null || error == null) {
+      return;
+    }
+    FirebaseSimpleLoginErrorCode code;
+    switch (error.getCode()) {
+      case FirebaseError.EXPIRED_TOKEN:
+        code = FirebaseSimpleLoginErrorCode.ExpiredToken;
+        break;
+      case FirebaseError.INVALID_TOKEN:
+        code = FirebaseSimpleLoginErrorCode.InvalidToken;
+        break;
+      default:
+        return;
+    }
+    FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(token);
+    long endsAt = claims != null ? claims.getSessionEndsAt() : 0;
+    long now = System.currentTimeMillis();
+    Revocation revocation = new Revocation(code, endsAt > now ? endsAt : now + DEFAULT_RETENTION_MILLIS);
+    synchronized (revoked) {
+      revoked.put(hash(token), revocation);
+    }
+  }
+
+  /**
+   * @return The error Firebase gave for the token, or null if it is not known to be revoked.
+   */
+  static FirebaseSimpleLoginErrorCode lookup(String token) {
+    if (token == null) {
+      return null;
+    }
+    synchronized (revoked) {
+      if (revoked.isEmpty()) {
+        // Nothing has been revoked; skip the hash
+        return null;
+      }
+    }
+    String key = hash(token);
+    synchronized (revoked) {
+      Revocation revocation = revoked.get(key);
+      if (revocation == null) {
+        return null;
+      }
+      if (revocation.retainUntilMillis < System.currentTimeMillis()) {
+        revoked.remove(key);
+        return null;
+      }
+      return revocation.code;
+    }
+  }
+
+  private static String hash(String token) {
+    try {
+      byte[] bytes = MessageDigest.getInstance("SHA-256").digest(token.getBytes("UTF-8"));
+      StringBuilder hex = new StringBuilder(HASH_BYTES * 2);
+      for (int i = 0; i < HASH_BYTES; i++) {
+        hex.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16)).append(Character.forDigit(bytes[i] & 0xf, 16));
+      }
+      return hex.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class Revocation {
+
+    private final FirebaseSimpleLoginErrorCode code;
+    private final long retainUntilMillis;
+
+    Revocation(FirebaseSimpleLoginErrorCode code, long retainUntilMillis) {
+      this.code = code;
+      this.retainUntilMillis = retainUntilMillis;
+    }
+  }
+
+}
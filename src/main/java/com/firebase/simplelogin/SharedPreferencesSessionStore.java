@@ -0,0 +1,44 @@
+package com.firebase.simplelogin;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Default session store, backed by the application's SharedPreferences. Sessions are local to the device, so there
+ * is never anything to invalidate.
+ *
+ * @author Firebase
+ *
+ */
+class SharedPreferencesSessionStore implements SimpleLoginSessionStore {
+
+  private final Context context;
+
+  SharedPreferencesSessionStore(Context context) {
+    this.context = context;
+  }
+
+  private SharedPreferences preferences() {
+    return context.getSharedPreferences(Constants.FIREBASE_ANDROID_SHARED_PREFERENCE, Context.MODE_PRIVATE);
+  }
+
+  public String get(String key) {
+    return preferences().getString(key, null);
+  }
+
+  public void put(String key, String value) {
+    // A single commit, so readers never see the key missing while it is replaced
+    preferences().edit().putString(key, value).commit();
+  }
+
+  public void remove(String key) {
+    preferences().edit().remove(key).commit();
+  }
+
+  public void addInvalidationListener(InvalidationListener listener) {
+  }
+
+  public void removeInvalidationListener(InvalidationListener listener) {
+  }
+
+}
@@ -30,26 +30,31 @@
 package com.firebase.simplelogin;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.content.SharedPreferences.Editor;
 import android.net.Uri;
-import android.os.AsyncTask;
-import android.os.Handler;
-import com.firebase.client.DataSnapshot;
 import com.firebase.client.Firebase;
 import com.firebase.client.Firebase.AuthListener;
 import com.firebase.client.FirebaseError;
-import com.firebase.client.ValueEventListener;
+import com.firebase.simplelogin.enums.AuthEvent;
 import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+import com.firebase.simplelogin.enums.LogLevel;
 import com.firebase.simplelogin.enums.Provider;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
+import com.firebase.simplelogin.enums.RequestPriority;
+import com.firebase.simplelogin.enums.ValidationRule;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -57,26 +62,22 @@ import java.util.Map;
  *
  * Entry point for the Firebase simple login library.
  *
- * Attach an event listener to the .info/authenticated location to get notifications on changes in authentication state.
+ * Add an auth state listener to get notifications on logins, logouts, revocations and token refreshes.
  *
  * <pre><code>
  * Firebase f = new Firebase("https://example.firebaseio.com/");
- * f.child(".info/authenticated").addValueEventListener(new ValueEventListener() {
- *  &#064;Override
- *  public void onDataChange(DataSnapshot arg0) {
- *    System.out.println("auth!: " + arg0.getValue());
- *  }
- *
+ * SimpleLogin simpleLogin = new SimpleLogin(f, this);
+ * simpleLogin.addAuthStateListener(new SimpleLoginAuthStateListener() {
  *  &#064;Override
- *  public void onCancelled() {
+ *  public void authStateChanged(AuthEvent event, FirebaseSimpleLoginUser user) {
+ *    System.out.println("auth!: " + event + " " + user);
  *  }
- * });
+ * }, executor);
  * </code></pre>
  *
  * Use the checkAuthStatus() method to retrieve the FirebaseSimpleLoginUser object of the logged in user.
  *
  * <pre><code>
- * SimpleLogin simpleLogin = new SimpleLogin(f, this);
  * final SimpleLoginAuthenticatedHandler simpleLoginAuthenticatedHandler = new SimpleLoginAuthenticatedHandler() {
  *  &#064;Override
  *  public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
@@ -88,16 +89,57 @@ import java.util.Map;
  * simpleLogin.checkAuthStatus(simpleLoginAuthenticatedHandler);
  * </code></pre>
  *
+ * A SimpleLogin instance is thread-safe: any method may be called from any thread, concurrently. When logins and
+ * logouts overlap, the saved session and auth state listeners reflect the one that was started last.
+ *
  * @author Firebase
  *
  */
-public class SimpleLogin {
+public class SimpleLogin implements Closeable {
+
+  private static final int MAX_ENDPOINT_ATTEMPTS = 3;
 
   private final Firebase ref;
   private final String namespace;
-  private final String apiHost;
+  private final EndpointSelector endpoints;
   private final Context androidContext;
   private final SimpleLoginOptions options;
+  private final AuthStatePublisher authStatePublisher;
+  private final AsyncLogger log;
+  private final RateLimiter rateLimiter;
+  private final AnonymousSessionPool anonymousSessionPool;
+  private final CredentialFailureCache credentialFailureCache;
+  private final PreflightValidator preflightValidator;
+  private final CallbackDispatcher callbacks;
+  private final SimpleLoginSessionStore sessionStore;
+  private volatile FirebaseSimpleLoginUser currentUser;
+
+  // Guards the saved session and currentUser. Every login attempt and logout takes a new generation, and storage is
+  // only written or cleared on behalf of the latest one, so a slow, superseded attempt cannot overwrite a newer session.
+  private final Object sessionLock = new Object();
+  private final AtomicLong sessionGeneration = new AtomicLong();
+  private ExpiryWheel.Timeout sessionExpiry;
+  // Generation of the saved session the auth state watcher was registered for
+  private long watchedGeneration;
+
+  private final Object lifecycleLock = new Object();
+  private boolean closed;
+  private HttpTransport transport;
+  private int operationsInFlight;
+
+  private final AuthStateWatcher.Session authStateSession = new AuthStateWatcher.Session() {
+    public void authenticationChanged(boolean authenticated) {
+      if (!authenticated) {
+        synchronized (sessionLock) {
+          // A login or logout started since then owns the session and publishes its own outcome
+          if (clearSession(watchedGeneration)) {
+            AuthStateWatcher.unregister(ref, this);
+            publishLoggedOut(AuthEvent.LOGOUT);
+          }
+        }
+      }
+    }
+  };
 
   /**
    * Simple Login constructor.
@@ -124,27 +166,209 @@ public class SimpleLogin {
    *
    * @param ref Firebase reference against which to login.
    * @param context Android context used to save tokens.
-   * @param options SimpleLoginOptions instance for advanced configuration.
+   * @param options SimpleLoginOptions instance for advanced configuration; null for the defaults.
    */
   public SimpleLogin(Firebase ref, Context context, SimpleLoginOptions options) {
-   this(ref, Constants.FIREBASE_AUTH_DEFAULT_API_HOST, context, options);
+   this(ref, Constants.FIREBASE_AUTH_DEFAULT_API_HOST, context, options != null ? options : new SimpleLoginOptions());
   }
 
   private SimpleLogin(Firebase ref, String apiHost, Context context, SimpleLoginOptions options) {
     super();
     this.ref = ref;
-    this.apiHost = apiHost;
+    this.endpoints = new EndpointSelector(options.getApiHosts() != null ? options.getApiHosts() : Collections.singletonList(apiHost));
     this.namespace = FirebaseUtils.namespaceFromRef(ref);
     this.androidContext = context;
     this.options = options;
+    this.log = AsyncLogger.fromOptions(options);
+    this.callbacks = CallbackDispatcher.fromOptions(options);
+    if (options.getSessionStore() != null) {
+      this.sessionStore = new CachingSessionStore(options.getSessionStore());
+    }
+    else {
+      this.sessionStore = context != null ? new SharedPreferencesSessionStore(context) : null;
+    }
+    this.rateLimiter = new RateLimiter(namespace, options.getRateLimitPerSecond(), options.getRateLimitBurst(), options.getRateLimitMaxWaitMillis());
+    this.preflightValidator = PreflightValidator.compile(options.getValidationPolicy());
+    this.credentialFailureCache = new CredentialFailureCache(namespace, options.getFailedLoginCacheMillis());
+    this.authStatePublisher = new AuthStatePublisher(options.getAuthEventCoalesceMillis());
+    if (options.getAnonymousSessionPoolSize() > 0) {
+      this.anonymousSessionPool = new AnonymousSessionPool(options.getAnonymousSessionPoolSize(), new AnonymousSessionPool.Source() {
+        public void fetch() {
+          fetchAnonymousSession();
+        }
+      }, log);
+    }
+    else {
+      this.anonymousSessionPool = null;
+    }
+    if (options.isPrewarmConnection()) {
+      for (String host : endpoints.hosts()) {
+        transport().prewarm(host);
+      }
+    }
+  }
+
+  /**
+   * Resolve and connect to the auth server in the background so that the first login does not pay for DNS, TCP and
+   * TLS setup. Safe to call early during application startup, before any SimpleLogin is created.
+   */
+  public static void prewarm() {
+    HttpTransport.retainForPrewarm().prewarm(Constants.FIREBASE_AUTH_DEFAULT_API_HOST);
   }
 
   /**
    * Logout the user.
    */
   public void logout() {
+    // Publish the logout here only; the watcher would report the same unauth() again. Superseding logins in flight
+    // under the same lock keeps them from registering the watcher again once they succeed.
+    synchronized (sessionLock) {
+      clearCredentials();
+      AuthStateWatcher.unregister(ref, authStateSession);
+    }
     this.ref.unauth();
-    clearCredentials();
+    publishLoggedOut(AuthEvent.LOGOUT);
+  }
+
+  /**
+   * Stop accepting new operations and release this instance's listeners and connections without waiting for
+   * in-flight ones, so it is safe to call from the main thread, e.g. in onDestroy(). Operations still in flight may
+   * fail with a ClientClosed error. Use shutdown(long, TimeUnit) from a background thread to let them finish first.
+   */
+  public void close() {
+    shutdown(0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop accepting new operations and wait for in-flight auth server requests and Firebase.auth() calls to finish,
+   * then release this instance's Firebase listeners, auth state listeners, session store listener, pooled sessions and
+   * connections.
+   * Operations started after shutdown fail with a ClientClosed error.
+   *
+   * Completion callbacks are delivered on the main thread, so do not call this from the main thread with a
+   * non-zero timeout; it would wait for callbacks that cannot run until it returns.
+   *
+   * @param timeout Maximum time to wait for in-flight operations.
+   * @param unit Unit of timeout.
+   * @return true if all in-flight operations finished within the timeout.
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) {
+    boolean drained;
+    boolean release;
+    boolean releaseTransport;
+    synchronized (lifecycleLock) {
+      release = !closed;
+      closed = true;
+      long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+      long remaining = unit.toMillis(timeout);
+      while (operationsInFlight > 0 && remaining > 0) {
+        try {
+          lifecycleLock.wait(remaining);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        remaining = deadline - System.currentTimeMillis();
+      }
+      drained = operationsInFlight == 0;
+      // Requests still in flight after this fail with ClientClosed rather than recreate the transport
+      releaseTransport = transport != null;
+      transport = null;
+    }
+    if (release) {
+      synchronized (sessionLock) {
+        AuthStateWatcher.unregister(ref, authStateSession);
+        cancelSessionExpiry();
+      }
+      authStatePublisher.clear();
+      if (anonymousSessionPool != null) {
+        anonymousSessionPool.close();
+      }
+      if (sessionStore instanceof CachingSessionStore) {
+        ((CachingSessionStore) sessionStore).close();
+      }
+      // Session writes are committed synchronously, so there is nothing left to flush
+      if (releaseTransport) {
+        HttpTransport.release();
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * The HTTP client and its connection pool are only created once this instance first talks to the auth server, so
+   * that constructing a SimpleLogin and restoring a saved session do not pay for them.
+   *
+   * @return The transport retained by this instance, or null once it has been shut down.
+   */
+  private HttpTransport transport() {
+    synchronized (lifecycleLock) {
+      if (transport == null && !closed) {
+        transport = HttpTransport.retain();
+      }
+      return transport;
+    }
+  }
+
+  private Trace startTrace(String operation) {
+    return Trace.start(options.getTracer(), operation);
+  }
+
+  private boolean isClosed() {
+    synchronized (lifecycleLock) {
+      return closed;
+    }
+  }
+
+  private boolean rejectIfClosed(final SimpleLoginAuthenticatedHandler userHandler) {
+    if (!isClosed()) {
+      return false;
+    }
+    handleError(userHandler, FirebaseSimpleLoginErrorCode.ClientClosed);
+    return true;
+  }
+
+  private void beginOperation() {
+    synchronized (lifecycleLock) {
+      operationsInFlight++;
+    }
+  }
+
+  private void endOperation() {
+    synchronized (lifecycleLock) {
+      if (--operationsInFlight == 0) {
+        lifecycleLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Add a listener for auth state changes. Events are delivered on the given executor, one at a time per listener.
+   *
+   * @param listener Listener for auth state changes.
+   * @param executor Executor on which the listener is called.
+   */
+  public void addAuthStateListener(SimpleLoginAuthStateListener listener, Executor executor) {
+    authStatePublisher.subscribe(listener, executor);
+  }
+
+  /**
+   * Add a listener for auth state changes. Events are delivered on the thread that observed the change.
+   *
+   * @param listener Listener for auth state changes.
+   */
+  public void addAuthStateListener(SimpleLoginAuthStateListener listener) {
+    authStatePublisher.subscribe(listener, null);
+  }
+
+  /**
+   * Remove a listener previously added with addAuthStateListener().
+   *
+   * @param listener Listener to remove.
+   */
+  public void removeAuthStateListener(SimpleLoginAuthStateListener listener) {
+    authStatePublisher.unsubscribe(listener);
   }
 
   /**
@@ -162,13 +386,21 @@ public class SimpleLogin {
    * @param handler Handler for asynchronous events.
    */
   public void checkAuthStatus(SimpleLoginAuthenticatedHandler handler) {
-    if(androidContext != null) {
-      SharedPreferences sharedPreferences = androidContext.getSharedPreferences(Constants.FIREBASE_ANDROID_SHARED_PREFERENCE, Context.MODE_PRIVATE);
-      String jsonTokenData = sharedPreferences.getString("jsonTokenData", null);
+    Trace trace = startTrace("checkAuthStatus");
+    checkAuthStatus(trace, trace.wrapAuthenticated(handler));
+  }
+
+  private void checkAuthStatus(final Trace trace, final SimpleLoginAuthenticatedHandler handler) {
+    if (rejectIfClosed(handler)) {
+      return;
+    }
+    if(sessionStore != null) {
+      long generation = sessionGeneration.get();
+      String jsonTokenData = sessionStore.get(options.getSessionKey());
       if(jsonTokenData != null) {
         try {
           JSONObject jsonObject = new JSONObject(jsonTokenData);
-          attemptAuthWithData(jsonObject, handler);
+          attemptAuthWithData(jsonObject, generation, trace, handler);
         }
         catch (JSONException e) {
           handler.authenticated(null, null);
@@ -183,18 +415,36 @@ public class SimpleLogin {
     }
   }
 
-  private void attemptAuthWithData(JSONObject data, final SimpleLoginAuthenticatedHandler handler) {
+  private void attemptAuthWithData(JSONObject data, long generation, final Trace trace, final SimpleLoginAuthenticatedHandler handler) {
     try {
       String token = data.has("token") ? data.getString("token") : null;
       JSONObject userData = data.has("userData") ? data.getJSONObject("userData") : null;
       if(token != null && userData != null) {
         Provider provider = FirebaseUtils.providerForString(userData.getString("provider"));
-        if(provider != Provider.INVALID) {
+        FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(token);
+        FirebaseSimpleLoginErrorCode revokedCode = RevokedTokens.lookup(token);
+        if(claims != null && claims.isExpired(System.currentTimeMillis())) {
+          // No point asking Firebase to accept a token that has already expired
+          clearSession(generation);
+          handler.authenticated(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.ExpiredToken), null);
+        }
+        else if(revokedCode != null) {
+          // Firebase already rejected this token for another instance or connection in this process
+          clearSession(generation);
+          handler.authenticated(FirebaseSimpleLoginError.errorFromCode(revokedCode), null);
+        }
+        else if(provider != Provider.INVALID) {
           // XXX send account for provider in objc
-          attemptAuthWithToken(token, provider, userData, handler);
+          FirebaseSimpleLoginUser cachedUser = options.isOptimisticRestore() ? userFromData(token, provider, userData) : null;
+          if (cachedUser != null) {
+            restoreOptimistically(cachedUser, userData, trace, handler);
+          }
+          else {
+            attemptAuthWithToken(token, provider, userData, trace, handler);
+          }
         }
         else {
-          clearCredentials();
+          clearSession(generation);
           handler.authenticated(null, null);
         }
       }
@@ -203,17 +453,63 @@ public class SimpleLogin {
       }
     }
     catch (JSONException e) {
-      e.printStackTrace();
+      log.warn("Unable to read saved session", e);
       handler.authenticated(FirebaseSimpleLoginError.errorFromResponse(null), null);
     }
   }
 
+  private void restoreOptimistically(final FirebaseSimpleLoginUser cachedUser, JSONObject userData, Trace trace, SimpleLoginAuthenticatedHandler handler) {
+    publishLoggedIn(cachedUser);
+    handler.authenticated(null, cachedUser);
+    final long generation = sessionGeneration.incrementAndGet();
+    attemptAuthWithToken(cachedUser.getAuthToken(), cachedUser.getProvider(), userData, generation, trace, new SimpleLoginAuthenticatedHandler() {
+      public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
+        // Being offline or preempted says nothing about the token; keep the user logged in and let Firebase retry
+        if (error == null || !isTokenRejection(error.getCode())) {
+          return;
+        }
+        synchronized (sessionLock) {
+          if (currentUser == cachedUser && clearSession(generation)) {
+            publishLoggedOut(AuthEvent.REVOKED);
+          }
+        }
+      }
+    });
+  }
+
+  private static boolean isTokenRejection(FirebaseSimpleLoginErrorCode code) {
+    return code == FirebaseSimpleLoginErrorCode.InvalidToken || code == FirebaseSimpleLoginErrorCode.ExpiredToken;
+  }
+
+  /**
+   * Clear the saved session unconditionally, superseding any login attempt in flight.
+   */
   private void clearCredentials() {
-    if(androidContext != null) {
-      SharedPreferences sharedPreferences = androidContext.getSharedPreferences(Constants.FIREBASE_ANDROID_SHARED_PREFERENCE, Context.MODE_PRIVATE);
-      Editor editor = sharedPreferences.edit();
-      editor.clear();
-      editor.commit();
+    synchronized (sessionLock) {
+      sessionGeneration.incrementAndGet();
+      removeSavedSession();
+    }
+  }
+
+  /**
+   * Clear the saved session only if no login or logout was started after the given generation.
+   *
+   * @return Whether the session was cleared.
+   */
+  private boolean clearSession(long generation) {
+    synchronized (sessionLock) {
+      if (generation != sessionGeneration.get()) {
+        return false;
+      }
+      removeSavedSession();
+      return true;
+    }
+  }
+
+  private void removeSavedSession() {
+    cancelSessionExpiry();
+    if(sessionStore != null) {
+      sessionStore.remove(options.getSessionKey());
     }
   }
 
@@ -222,9 +518,23 @@ public class SimpleLogin {
      *
      * @param completionHandler Handler for asynchronous events.
      */
-    public void loginAnonymously(final SimpleLoginAuthenticatedHandler completionHandler) {
+    public void loginAnonymously(SimpleLoginAuthenticatedHandler completionHandler) {
+      Trace trace = startTrace("loginAnonymously");
+      loginAnonymously(trace, trace.wrapAuthenticated(completionHandler));
+    }
+
+    private void loginAnonymously(final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+      if (rejectIfClosed(completionHandler)) {
+        return;
+      }
+      AnonymousSessionPool.Session pooledSession = anonymousSessionPool != null ? anonymousSessionPool.take() : null;
+      if (pooledSession != null) {
+        attemptAuthWithToken(pooledSession.getToken(), Provider.ANONYMOUS, pooledSession.getUserData(), trace, completionHandler);
+        return;
+      }
+
       HashMap<String, String> data = new HashMap<String, String>();
-      makeRequest(Constants.FIREBASE_AUTH_ANONYMOUS_PATH, data, new RequestHandler() {
+      makeRequest(Constants.FIREBASE_AUTH_ANONYMOUS_PATH, Provider.ANONYMOUS, data, RequestPriority.INTERACTIVE, trace, new RequestHandler() {
 
         public void handle(FirebaseSimpleLoginError error, JSONObject data) {
           if (error != null) {
@@ -245,12 +555,12 @@ public class SimpleLogin {
                   completionHandler.authenticated(theError, null);
                 }
                 else {
-                  attemptAuthWithToken(token, Provider.ANONYMOUS, userData, completionHandler);
+                  attemptAuthWithToken(token, Provider.ANONYMOUS, userData, trace, completionHandler);
                 }
               }
             }
             catch (JSONException e) {
-              e.printStackTrace();
+              log.warn("Unable to parse auth server response", e);
               FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
               completionHandler.authenticated(theError, null);
             }
@@ -260,6 +570,34 @@ public class SimpleLogin {
       });
     }
 
+  private void fetchAnonymousSession() {
+    if (isClosed()) {
+      anonymousSessionPool.fetchFailed();
+      return;
+    }
+    makeRequest(Constants.FIREBASE_AUTH_ANONYMOUS_PATH, Provider.ANONYMOUS, new HashMap<String, String>(), RequestPriority.BACKGROUND, Trace.NONE, new RequestHandler() {
+      public void handle(FirebaseSimpleLoginError error, JSONObject data) {
+        String token = null;
+        JSONObject userData = null;
+        if (error == null) {
+          try {
+            token = data.has("token") ? data.getString("token") : null;
+            userData = data.has("user") ? data.getJSONObject("user") : null;
+          }
+          catch (JSONException e) {
+            log.warn("Unable to parse auth server response", e);
+          }
+        }
+        if (token != null && userData != null) {
+          anonymousSessionPool.add(token, userData);
+        }
+        else {
+          anonymousSessionPool.fetchFailed();
+        }
+      }
+    });
+  }
+
   /**
    * Login an existing Firebase "email/password" user.
    *
@@ -267,96 +605,325 @@ public class SimpleLogin {
    * @param password Password for user.
    * @param completionHandler Handler for asynchronous events.
    */
-  public void loginWithEmail(String email, String password, final SimpleLoginAuthenticatedHandler completionHandler) {
-    if (!Validation.isValidEmail(email)) {
-      handleInvalidEmail(completionHandler);
+  public void loginWithEmail(String email, String password, SimpleLoginAuthenticatedHandler completionHandler) {
+    loginWithEmail(email, password, RequestPriority.INTERACTIVE, completionHandler);
+  }
+
+  /**
+   * Login an existing Firebase "email/password" user.
+   *
+   * @param email Email address of user.
+   * @param password Password for user.
+   * @param priority Scheduling class of the request; INTERACTIVE if omitted.
+   * @param completionHandler Handler for asynchronous events.
+   */
+  public void loginWithEmail(String email, String password, RequestPriority priority, SimpleLoginAuthenticatedHandler completionHandler) {
+    Trace trace = startTrace("loginWithEmail");
+    loginWithEmail(email, password, priority, trace, trace.wrapAuthenticated(completionHandler));
+  }
+
+  private void loginWithEmail(final String email, final String password, final RequestPriority priority, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    if (rejectIfClosed(completionHandler)) {
+      return;
     }
-    else if (!Validation.isValidPassword(password)) {
-      handleInvalidPassword(completionHandler);
+    ValidationRule rejectedBy = preflightValidator.checkEmail(email);
+    if (rejectedBy == null) {
+      rejectedBy = preflightValidator.checkPassword(password);
+    }
+    FirebaseSimpleLoginErrorCode cachedFailure;
+    if (rejectedBy != null) {
+      handleValidationFailure(completionHandler, rejectedBy);
+    }
+    else if ((cachedFailure = credentialFailureCache.lookup(email, password)) != null) {
+      handleError(completionHandler, cachedFailure);
     }
     else {
       HashMap<String, String> data = new HashMap<String, String>();
       data.put("email", email);
       data.put("password", password);
 
-      makeRequest(Constants.FIREBASE_AUTH_PASSWORD_PATH, data, new RequestHandler() {
-        public void handle(FirebaseSimpleLoginError error, JSONObject data) {
-          if (error != null) {
-            completionHandler.authenticated(error, null);
-          }
-          else {
-            try {
-              String token = data.has("token") ? data.getString("token") : null;
-              if (token == null) {
-                JSONObject errorDetails = data.has("error") ? data.getJSONObject("error") : null;
-                FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(errorDetails);
+      makeRequest(Constants.FIREBASE_AUTH_PASSWORD_PATH, Provider.PASSWORD, data, priority, trace, passwordLoginHandler(email, password, null, trace, completionHandler));
+    }
+  }
+
+  /**
+   * @param accountChange The account request this login follows, or null for a plain login.
+   */
+  private RequestHandler passwordLoginHandler(final String email, final String password, final LoginAfterAccountChange accountChange, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    return new RequestHandler() {
+      public void handle(FirebaseSimpleLoginError error, JSONObject data) {
+        if (error != null) {
+          completionHandler.authenticated(error, null);
+        }
+        else {
+          try {
+            String token = data.has("token") ? data.getString("token") : null;
+            if (token == null) {
+              JSONObject errorDetails = data.has("error") ? data.getJSONObject("error") : null;
+              FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(errorDetails);
+              // A failed account request says nothing about whether these credentials log in
+              if (accountChange == null || accountChange.isAccountChanged()) {
+                credentialFailureCache.recordFailure(email, password, theError);
+              }
+              completionHandler.authenticated(theError, null);
+            }
+            else {
+              JSONObject userData = data.has("user") ? data.getJSONObject("user") : null;
+              if (userData == null) {
+                FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
                 completionHandler.authenticated(theError, null);
               }
               else {
-                JSONObject userData = data.has("user") ? data.getJSONObject("user") : null;
-                if (userData == null) {
-                  FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
-                  completionHandler.authenticated(theError, null);
-                }
-                else {
-                  attemptAuthWithToken(token, Provider.PASSWORD, userData, completionHandler);
-                }
+                attemptAuthWithToken(token, Provider.PASSWORD, userData, trace, completionHandler);
               }
             }
-            catch (JSONException e) {
-              e.printStackTrace();
-              FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
-              completionHandler.authenticated(theError, null);
-            }
+          }
+          catch (JSONException e) {
+            log.warn("Unable to parse auth server response", e);
+            FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
+            completionHandler.authenticated(theError, null);
           }
         }
+      }
+    };
+  }
 
-      });
+  /**
+   * Continuation that logs in with the given credentials as soon as the previous account request succeeded, without
+   * a round trip through the main thread. A failed account request is passed on for the login handler to report.
+   * Once the account request has succeeded it cannot be undone, so any later failure is reported with a distinct
+   * error code, telling the caller not to simply retry the whole operation.
+   */
+  private final class LoginAfterAccountChange implements RequestContinuation {
+
+    private final String email;
+    private final String password;
+    private final FirebaseSimpleLoginErrorCode partialFailureCode;
+    private final Trace trace;
+    private volatile boolean accountChanged;
+
+    LoginAfterAccountChange(String email, String password, FirebaseSimpleLoginErrorCode partialFailureCode, Trace trace) {
+      this.email = email;
+      this.password = password;
+      this.partialFailureCode = partialFailureCode;
+      this.trace = trace;
+    }
+
+    public JSONObject proceed(JSONObject response) throws AuthRequestException {
+      if (response.has("error")) {
+        return response;
+      }
+      accountChanged = true;
+      credentialFailureCache.invalidate(email);
+      HashMap<String, String> data = new HashMap<String, String>();
+      data.put("email", email);
+      data.put("password", password);
+      return fetch(Constants.FIREBASE_AUTH_PASSWORD_PATH, Provider.PASSWORD, data, false, trace);
+    }
+
+    /**
+     * @return Whether the account request succeeded, so that any response since came from the login.
+     */
+    boolean isAccountChanged() {
+      return accountChanged;
+    }
+
+    /**
+     * @return A handler that reports failures after the account change with partialFailureCode before delegating.
+     */
+    SimpleLoginAuthenticatedHandler reportingTo(final SimpleLoginAuthenticatedHandler handler) {
+      return new SimpleLoginAuthenticatedHandler() {
+        public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
+          if (error != null && accountChanged) {
+            error = FirebaseSimpleLoginError.errorFromPartialFailure(partialFailureCode, error);
+          }
+          handler.authenticated(error, user);
+        }
+      };
     }
   }
 
-  private void attemptAuthWithToken(final String token, final Provider provider, final JSONObject userData, final SimpleLoginAuthenticatedHandler completionHandler) {
+  private void attemptAuthWithToken(String token, Provider provider, JSONObject userData, Trace trace, SimpleLoginAuthenticatedHandler completionHandler) {
+    attemptAuthWithToken(token, provider, userData, sessionGeneration.incrementAndGet(), trace, completionHandler);
+  }
+
+  /**
+   * Authenticate with a token on behalf of the given session generation; the session is only saved or cleared if no
+   * newer login or logout has started by the time Firebase answers.
+   */
+  private void attemptAuthWithToken(final String token, final Provider provider, final JSONObject userData, final long generation, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    FirebaseSimpleLoginErrorCode revokedCode = RevokedTokens.lookup(token);
+    if (revokedCode != null) {
+      handleError(completionHandler, revokedCode);
+      return;
+    }
+    beginOperation();
+    final Trace authTrace = trace.child("auth");
+    final AtomicBoolean finished = new AtomicBoolean();
     this.ref.auth(token, new AuthListener() {
 
       public void onAuthSuccess(Object authData) {
-        FirebaseSimpleLoginUser user = saveSession(token, provider, userData);
+        authTrace.finish(null);
+        try {
+          authSucceeded();
+        }
+        finally {
+          finish();
+        }
+      }
+
+      private void authSucceeded() {
+        Trace sessionTrace = trace.child("session");
+        FirebaseSimpleLoginUser user = saveSession(token, provider, userData, generation);
+        sessionTrace.finish(null);
         if (user != null) {
-          final Firebase authRef = ref.getRoot().child(".info/authenticated");
-          final ValueEventListener authValueEventListener = new ValueEventListener() {
-            public void onDataChange(DataSnapshot snapshot) {
-              Object value = snapshot.getValue();
-              if (value instanceof Boolean) {
-                Boolean boolVal = (Boolean) value;
-                if (!boolVal.booleanValue()) {
-                  clearCredentials();
-                  authRef.removeEventListener(this); // can't refer to authValueEventListener here
-                }
-              }
-            }
-            public void onCancelled(FirebaseError error) {}
-          };
-          authRef.addValueEventListener(authValueEventListener);
           completionHandler.authenticated(null, user);
         }
         else {
           completionHandler.authenticated(FirebaseSimpleLoginError.errorFromResponse(null), null);
         }
-
       }
 
       public void onAuthRevoked(FirebaseError error) {
-        clearCredentials();
-        completionHandler.authenticated(FirebaseSimpleLoginError.errorFromFirebaseError(error), null);
+        authTrace.finish(FirebaseSimpleLoginError.errorFromFirebaseError(error));
+        RevokedTokens.record(token, error);
+        try {
+          synchronized (sessionLock) {
+            if (clearSession(generation)) {
+              publishLoggedOut(AuthEvent.REVOKED);
+            }
+          }
+          completionHandler.authenticated(FirebaseSimpleLoginError.errorFromFirebaseError(error), null);
+        }
+        finally {
+          finish();
+        }
       }
 
       public void onAuthError(FirebaseError error) {
-        completionHandler.authenticated(FirebaseSimpleLoginError.errorFromFirebaseError(error), null);
+        authTrace.finish(FirebaseSimpleLoginError.errorFromFirebaseError(error));
+        RevokedTokens.record(token, error);
+        try {
+          completionHandler.authenticated(FirebaseSimpleLoginError.errorFromFirebaseError(error), null);
+        }
+        finally {
+          finish();
+        }
+      }
+
+      private void finish() {
+        // Revocation can arrive long after success; only the first callback ends the operation
+        if (finished.compareAndSet(false, true)) {
+          endOperation();
+        }
       }
     });
   }
 
-  private FirebaseSimpleLoginUser saveSession(String token, Provider provider, JSONObject userData) {
-    clearCredentials();
+  private void publishLoggedIn(FirebaseSimpleLoginUser user) {
+    synchronized (sessionLock) {
+      FirebaseSimpleLoginUser previous = currentUser;
+      currentUser = user;
+      if (previous != null && previous.getAuthToken() != null && previous.getAuthToken().equals(user.getAuthToken())) {
+        // Same session, e.g. an optimistic restore that has now been confirmed
+        return;
+      }
+      boolean refresh = previous != null && previous.getUid() != null && previous.getUid().equals(user.getUid());
+      authStatePublisher.publish(refresh ? AuthEvent.REFRESH : AuthEvent.LOGIN, user);
+    }
+  }
+
+  private void publishLoggedOut(AuthEvent event) {
+    synchronized (sessionLock) {
+      currentUser = null;
+      authStatePublisher.publish(event, null);
+    }
+  }
+
+  /**
+   * Save the session, watch its auth state and publish the login, unless a newer login or logout has started since the given generation.
+   * The previous session is replaced in a single write, so readers never see an empty or mixed state.
+   *
+   * @return The logged in user, or null if the user data is invalid.
+   */
+  private FirebaseSimpleLoginUser saveSession(String token, Provider provider, JSONObject userData, long generation) {
+    FirebaseSimpleLoginUser user = userFromData(token, provider, userData);
+    String jsonTokenData = null;
+    if (user != null) {
+      try {
+        JSONObject tokenData = new JSONObject();
+        tokenData.put("token", token);
+        tokenData.put("userData", userData);
+        jsonTokenData = tokenData.toString();
+      }
+      catch (JSONException e) {
+        log.warn("Unable to save session", e);
+      }
+    }
+
+    synchronized (sessionLock) {
+      if (generation != sessionGeneration.get()) {
+        // Superseded; the caller still gets its user, but the newer attempt owns the saved session
+        return user;
+      }
+      if(sessionStore != null) {
+        if (jsonTokenData != null) {
+          sessionStore.put(options.getSessionKey(), jsonTokenData);
+        }
+        else {
+          sessionStore.remove(options.getSessionKey());
+        }
+      }
+      cancelSessionExpiry();
+      if (user != null) {
+        scheduleSessionExpiry(token, generation);
+        // Registered under the lock, so a logout or close that starts later always finds and removes it
+        watchedGeneration = generation;
+        if (!isClosed()) {
+          AuthStateWatcher.register(ref, authStateSession);
+        }
+        publishLoggedIn(user);
+      }
+    }
+    return user;
+  }
+
+  private void scheduleSessionExpiry(String token, final long generation) {
+    FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(token);
+    long endsAt = claims != null ? claims.getSessionEndsAt() : 0;
+    if (endsAt != 0) {
+      sessionExpiry = ExpiryWheel.get().schedule(endsAt, new Runnable() {
+        public void run() {
+          // Session storage may be slow; keep it off the timer thread
+          RequestScheduler.get().execute(new Runnable() {
+            public void run() {
+              expireSession(generation);
+            }
+          }, RequestPriority.BACKGROUND, log);
+        }
+      }, log);
+    }
+  }
+
+  private void cancelSessionExpiry() {
+    if (sessionExpiry != null) {
+      sessionExpiry.cancel();
+      sessionExpiry = null;
+    }
+  }
+
+  /**
+   * Drop a session whose token has expired, even if Firebase is offline and cannot revoke it.
+   */
+  private void expireSession(long generation) {
+    synchronized (sessionLock) {
+      if (clearSession(generation)) {
+        publishLoggedOut(AuthEvent.REVOKED);
+      }
+    }
+  }
+
+  private FirebaseSimpleLoginUser userFromData(String token, Provider provider, JSONObject userData) {
     FirebaseSimpleLoginUser user = null;
     try {
       String userId = userData.has("id") ? userData.getString("id") : null;
@@ -367,31 +934,13 @@ public class SimpleLogin {
           if(email != null) {
             user = new FirebaseSimpleLoginUser(userId, userData.getString("uid"), token, email, isTemporaryPassword);
           }
-        }
-        else {
-          user = new FirebaseSimpleLoginUser(userId, userData.getString("uid"), provider, token, FirebaseUtils.toMap(userData));
-        }
-      }
-    }
-    catch (JSONException e) {}
-
-    // Save to shared prefs
-    if(androidContext != null) {
-      SharedPreferences sharedPreferences = androidContext.getSharedPreferences(Constants.FIREBASE_ANDROID_SHARED_PREFERENCE, Context.MODE_PRIVATE);
-      Editor editor = sharedPreferences.edit();
-      try {
-        JSONObject jsonTokenData = new JSONObject();
-        jsonTokenData.put("token", token);
-        jsonTokenData.put("userData", userData);
-        editor.putString("jsonTokenData", jsonTokenData.toString());
-      }
-      catch (JSONException e) {
-        // TODO: log an error?
-      }
-      finally {
-        editor.commit();
+        }
+        else {
+          user = new FirebaseSimpleLoginUser(userId, userData.getString("uid"), provider, token, FirebaseUtils.toMap(userData));
+        }
       }
     }
+    catch (JSONException e) {}
     return user;
   }
 
@@ -402,19 +951,40 @@ public class SimpleLogin {
    * @param password Password for user.
    * @param completionHandler Handler for asynchronous events.
    */
-  public void createUser(String email, String password, final SimpleLoginAuthenticatedHandler completionHandler) {
-    if (!Validation.isValidEmail(email)) {
-      handleInvalidEmail(completionHandler);
+  public void createUser(String email, String password, SimpleLoginAuthenticatedHandler completionHandler) {
+    createUser(email, password, RequestPriority.INTERACTIVE, completionHandler);
+  }
+
+  /**
+   * Create a Firebase "email/password" user.
+   *
+   * @param email Email address for user.
+   * @param password Password for user.
+   * @param priority Scheduling class of the request; INTERACTIVE if omitted.
+   * @param completionHandler Handler for asynchronous events.
+   */
+  public void createUser(String email, String password, RequestPriority priority, SimpleLoginAuthenticatedHandler completionHandler) {
+    Trace trace = startTrace("createUser");
+    createUser(email, password, priority, trace, trace.wrapAuthenticated(completionHandler));
+  }
+
+  private void createUser(final String email, String password, final RequestPriority priority, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    if (rejectIfClosed(completionHandler)) {
+      return;
     }
-    else if (!Validation.isValidPassword(password)) {
-      handleInvalidPassword(completionHandler);
+    ValidationRule rejectedBy = preflightValidator.checkEmail(email);
+    if (rejectedBy == null) {
+      rejectedBy = preflightValidator.checkNewPassword(password);
+    }
+    if (rejectedBy != null) {
+      handleValidationFailure(completionHandler, rejectedBy);
     }
     else {
       HashMap<String, String> data = new HashMap<String, String>();
       data.put("email", email);
       data.put("password", password);
 
-      makeRequest(Constants.FIREBASE_AUTH_CREATEUSER_PATH, data, new RequestHandler() {
+      makeRequest(Constants.FIREBASE_AUTH_CREATEUSER_PATH, Provider.PASSWORD, data, priority, trace, new RequestHandler() {
         public void handle(FirebaseSimpleLoginError error, JSONObject data) {
           if (error != null) {
             completionHandler.authenticated(error, null);
@@ -436,11 +1006,12 @@ public class SimpleLogin {
                                 String uid = userData.getString("uid");
                                 String email = userData.getString("email");
                 FirebaseSimpleLoginUser user = new FirebaseSimpleLoginUser(userId, uid, null, email, false);
+                credentialFailureCache.invalidate(email);
                 completionHandler.authenticated(null, user);
               }
             }
             catch (JSONException e) {
-              e.printStackTrace();
+              log.warn("Unable to parse auth server response", e);
               FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
               completionHandler.authenticated(theError, null);
             }
@@ -450,20 +1021,88 @@ public class SimpleLogin {
     }
   }
 
+  /**
+   * Create a Firebase "email/password" user and log them in, in a single operation: the login request is sent as soon
+   * as the account exists, and the handler is called once with the logged in user. If the account was created but
+   * the login failed, the error code is UserCreatedLoginFailed and getCause() holds the login error.
+   *
+   * @param email Email address for user.
+   * @param password Password for user.
+   * @param completionHandler Handler for asynchronous events.
+   */
+  public void createUserAndLogin(String email, String password, SimpleLoginAuthenticatedHandler completionHandler) {
+    createUserAndLogin(email, password, RequestPriority.INTERACTIVE, completionHandler);
+  }
+
+  /**
+   * Create a Firebase "email/password" user and log them in, in a single operation.
+   *
+   * @param email Email address for user.
+   * @param password Password for user.
+   * @param priority Scheduling class of the requests; INTERACTIVE if omitted.
+   * @param completionHandler Handler for asynchronous events.
+   */
+  public void createUserAndLogin(String email, String password, RequestPriority priority, SimpleLoginAuthenticatedHandler completionHandler) {
+    Trace trace = startTrace("createUserAndLogin");
+    createUserAndLogin(email, password, priority, trace, trace.wrapAuthenticated(completionHandler));
+  }
+
+  private void createUserAndLogin(final String email, final String password, final RequestPriority priority, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    if (rejectIfClosed(completionHandler)) {
+      return;
+    }
+    ValidationRule rejectedBy = preflightValidator.checkEmail(email);
+    if (rejectedBy == null) {
+      rejectedBy = preflightValidator.checkNewPassword(password);
+    }
+    if (rejectedBy != null) {
+      handleValidationFailure(completionHandler, rejectedBy);
+    }
+    else {
+      HashMap<String, String> data = new HashMap<String, String>();
+      data.put("email", email);
+      data.put("password", password);
+
+      LoginAfterAccountChange login = new LoginAfterAccountChange(email, password, FirebaseSimpleLoginErrorCode.UserCreatedLoginFailed, trace);
+      makeRequest(Constants.FIREBASE_AUTH_CREATEUSER_PATH, Provider.PASSWORD, data, priority, trace,
+          login, passwordLoginHandler(email, password, login, trace, login.reportingTo(completionHandler)));
+    }
+  }
+
+  /**
+   * Remove a Firebase "email/password" user.
+   *
+   * @param email Email address for user.
+   * @param password Password for user.
+   * @param handler Handler for asynchronous events.
+   */
+  public void removeUser(String email, String password, SimpleLoginCompletionHandler handler) {
+    removeUser(email, password, RequestPriority.INTERACTIVE, handler);
+  }
+
   /**
    * Remove a Firebase "email/password" user.
    *
    * @param email Email address for user.
    * @param password Password for user.
+   * @param priority Scheduling class of the request; INTERACTIVE if omitted.
    * @param handler Handler for asynchronous events.
    */
-  public void removeUser(String email, String password, final SimpleLoginCompletionHandler handler) {
+  public void removeUser(String email, String password, RequestPriority priority, SimpleLoginCompletionHandler handler) {
+    Trace trace = startTrace("removeUser");
+    removeUser(email, password, priority, trace, trace.wrapCompletion(handler));
+  }
+
+  private void removeUser(final String email, String password, final RequestPriority priority, final Trace trace, final SimpleLoginCompletionHandler handler) {
     final SimpleLoginAuthenticatedHandler authHandler = new SimpleLoginAuthenticatedHandler() {
       public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
         handler.completed(error, false);
       }
     };
 
+    if (rejectIfClosed(authHandler)) {
+      return;
+    }
     if (!Validation.isValidEmail(email)) {
       handleInvalidEmail(authHandler);
     }
@@ -475,7 +1114,7 @@ public class SimpleLogin {
       data.put("email", email);
       data.put("password", password);
 
-      makeRequest(Constants.FIREBASE_AUTH_REMOVEUSER_PATH, data, new RequestHandler() {
+      makeRequest(Constants.FIREBASE_AUTH_REMOVEUSER_PATH, Provider.PASSWORD, data, priority, trace, new RequestHandler() {
         public void handle(FirebaseSimpleLoginError error, JSONObject data) {
           if(error != null) {
             handler.completed(error, false);
@@ -487,11 +1126,12 @@ public class SimpleLogin {
                 handler.completed(FirebaseSimpleLoginError.errorFromResponse(errorDetails), false);
               }
               else {
+                credentialFailureCache.invalidate(email);
                 handler.completed(null, true);
               }
             }
             catch (JSONException e) {
-              e.printStackTrace();
+              log.warn("Unable to parse auth server response", e);
               FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
               handler.completed(theError, false);
             }
@@ -509,18 +1149,40 @@ public class SimpleLogin {
    * @param newPassword User's new password.
    * @param handler Handler for asynchronous events.
    */
-  public void changePassword(final String email, final String oldPassword, final String newPassword, final SimpleLoginCompletionHandler handler) {
+  public void changePassword(final String email, final String oldPassword, final String newPassword, SimpleLoginCompletionHandler handler) {
+    changePassword(email, oldPassword, newPassword, RequestPriority.INTERACTIVE, handler);
+  }
+
+  /**
+   * Change the password for a Firebase "email/password" user.
+   *
+   * @param email Email address for user.
+   * @param oldPassword User's old password.
+   * @param newPassword User's new password.
+   * @param priority Scheduling class of the request; INTERACTIVE if omitted.
+   * @param handler Handler for asynchronous events.
+   */
+  public void changePassword(final String email, final String oldPassword, final String newPassword, RequestPriority priority, SimpleLoginCompletionHandler handler) {
+    Trace trace = startTrace("changePassword");
+    changePassword(email, oldPassword, newPassword, priority, trace, trace.wrapCompletion(handler));
+  }
+
+  private void changePassword(final String email, final String oldPassword, final String newPassword, final RequestPriority priority, final Trace trace, final SimpleLoginCompletionHandler handler) {
     final SimpleLoginAuthenticatedHandler authHandler = new SimpleLoginAuthenticatedHandler() {
       public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
         handler.completed(error, false);
       }
     };
 
-    if (!Validation.isValidEmail(email)) {
-      handleInvalidEmail(authHandler);
+    if (rejectIfClosed(authHandler)) {
+      return;
     }
-    else if (!Validation.isValidPassword(newPassword)) {
-      handleInvalidPassword(authHandler);
+    ValidationRule rejectedBy = preflightValidator.checkEmail(email);
+    if (rejectedBy == null) {
+      rejectedBy = preflightValidator.checkNewPassword(newPassword);
+    }
+    if (rejectedBy != null) {
+      handleValidationFailure(authHandler, rejectedBy);
     }
     else {
       HashMap<String, String> data = new HashMap<String, String>();
@@ -528,7 +1190,7 @@ public class SimpleLogin {
       data.put("oldPassword", oldPassword);
       data.put("newPassword", newPassword);
 
-      makeRequest(Constants.FIREBASE_AUTH_CHANGEPASSWORD_PATH, data, new RequestHandler() {
+      makeRequest(Constants.FIREBASE_AUTH_CHANGEPASSWORD_PATH, Provider.PASSWORD, data, priority, trace, new RequestHandler() {
         public void handle(FirebaseSimpleLoginError error, JSONObject data) {
           if(error != null) {
             handler.completed(error, false);
@@ -540,11 +1202,12 @@ public class SimpleLogin {
                 handler.completed(FirebaseSimpleLoginError.errorFromResponse(errorDetails), false);
               }
               else {
+                credentialFailureCache.invalidate(email);
                 handler.completed(null, true);
               }
             }
             catch (JSONException e) {
-              e.printStackTrace();
+              log.warn("Unable to parse auth server response", e);
               FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
               handler.completed(theError, false);
             }
@@ -554,19 +1217,91 @@ public class SimpleLogin {
     }
   }
 
+  /**
+   * Change the password for a Firebase "email/password" user and log them in with the new password, in a single
+   * operation: the login request is sent as soon as the password has changed, and the handler is called once with
+   * the logged in user. If the password was changed but the login failed, the error code is
+   * PasswordChangedLoginFailed and getCause() holds the login error.
+   *
+   * @param email Email address for user.
+   * @param oldPassword User's old password.
+   * @param newPassword User's new password.
+   * @param completionHandler Handler for asynchronous events.
+   */
+  public void changePasswordAndLogin(String email, String oldPassword, String newPassword, SimpleLoginAuthenticatedHandler completionHandler) {
+    changePasswordAndLogin(email, oldPassword, newPassword, RequestPriority.INTERACTIVE, completionHandler);
+  }
+
+  /**
+   * Change the password for a Firebase "email/password" user and log them in with the new password, in a single
+   * operation.
+   *
+   * @param email Email address for user.
+   * @param oldPassword User's old password.
+   * @param newPassword User's new password.
+   * @param priority Scheduling class of the requests; INTERACTIVE if omitted.
+   * @param completionHandler Handler for asynchronous events.
+   */
+  public void changePasswordAndLogin(String email, String oldPassword, String newPassword, RequestPriority priority, SimpleLoginAuthenticatedHandler completionHandler) {
+    Trace trace = startTrace("changePasswordAndLogin");
+    changePasswordAndLogin(email, oldPassword, newPassword, priority, trace, trace.wrapAuthenticated(completionHandler));
+  }
+
+  private void changePasswordAndLogin(final String email, final String oldPassword, final String newPassword, final RequestPriority priority, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    if (rejectIfClosed(completionHandler)) {
+      return;
+    }
+    ValidationRule rejectedBy = preflightValidator.checkEmail(email);
+    if (rejectedBy == null) {
+      rejectedBy = preflightValidator.checkNewPassword(newPassword);
+    }
+    if (rejectedBy != null) {
+      handleValidationFailure(completionHandler, rejectedBy);
+    }
+    else {
+      HashMap<String, String> data = new HashMap<String, String>();
+      data.put("email", email);
+      data.put("oldPassword", oldPassword);
+      data.put("newPassword", newPassword);
+
+      LoginAfterAccountChange login = new LoginAfterAccountChange(email, newPassword, FirebaseSimpleLoginErrorCode.PasswordChangedLoginFailed, trace);
+      makeRequest(Constants.FIREBASE_AUTH_CHANGEPASSWORD_PATH, Provider.PASSWORD, data, priority, trace,
+          login, passwordLoginHandler(email, newPassword, login, trace, login.reportingTo(completionHandler)));
+    }
+  }
+
+    /**
+     * Send a password reset email for a Firebase "email/password" user.
+     *
+     * @param email Email address for user.
+     * @param handler Handler for asynchronous events.
+     */
+    public void sendPasswordResetEmail(String email, SimpleLoginCompletionHandler handler) {
+      sendPasswordResetEmail(email, RequestPriority.INTERACTIVE, handler);
+    }
+
     /**
      * Send a password reset email for a Firebase "email/password" user.
      *
      * @param email Email address for user.
+     * @param priority Scheduling class of the request; INTERACTIVE if omitted.
      * @param handler Handler for asynchronous events.
      */
-    public void sendPasswordResetEmail(String email, final SimpleLoginCompletionHandler handler) {
+    public void sendPasswordResetEmail(String email, RequestPriority priority, SimpleLoginCompletionHandler handler) {
+      Trace trace = startTrace("sendPasswordResetEmail");
+      sendPasswordResetEmail(email, priority, trace, trace.wrapCompletion(handler));
+    }
+
+    private void sendPasswordResetEmail(final String email, final RequestPriority priority, final Trace trace, final SimpleLoginCompletionHandler handler) {
       final SimpleLoginAuthenticatedHandler authHandler = new SimpleLoginAuthenticatedHandler() {
         public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
         handler.completed(error, false);
         }
       };
 
+      if (rejectIfClosed(authHandler)) {
+        return;
+      }
       if (!Validation.isValidEmail(email)) {
         handleInvalidEmail(authHandler);
       }
@@ -574,7 +1309,7 @@ public class SimpleLogin {
         HashMap<String, String> data = new HashMap<String, String>();
         data.put("email", email);
 
-        makeRequest(Constants.FIREBASE_AUTH_RESETPASSWORD_PATH, data, new RequestHandler() {
+        makeRequest(Constants.FIREBASE_AUTH_RESETPASSWORD_PATH, Provider.PASSWORD, data, priority, trace, new RequestHandler() {
           public void handle(FirebaseSimpleLoginError error, JSONObject data) {
             if(error != null) {
               handler.completed(error, false);
@@ -586,11 +1321,12 @@ public class SimpleLogin {
                   handler.completed(FirebaseSimpleLoginError.errorFromResponse(errorDetails), false);
                 }
                 else {
+                  credentialFailureCache.invalidate(email);
                   handler.completed(null, true);
                 }
               }
               catch (JSONException e) {
-                e.printStackTrace();
+                log.warn("Unable to parse auth server response", e);
                 FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
                 handler.completed(theError, false);
               }
@@ -600,8 +1336,18 @@ public class SimpleLogin {
       }
     }
 
+  private void handleError(final SimpleLoginAuthenticatedHandler userHandler, final FirebaseSimpleLoginErrorCode code) {
+    callbacks.dispatch(new Runnable() {
+      public void run() {
+        if(userHandler != null) {
+          userHandler.authenticated(FirebaseSimpleLoginError.errorFromCode(code), null);
+        }
+      }
+    });
+  }
+
   private void handleInvalidEmail(final SimpleLoginAuthenticatedHandler userHandler) {
-    new Handler().post(new Runnable() {
+    callbacks.dispatch(new Runnable() {
       public void run() {
         if(userHandler != null) {
           userHandler.authenticated(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.InvalidEmail), null);
@@ -611,7 +1357,7 @@ public class SimpleLogin {
   }
 
   private void handleInvalidPassword(final SimpleLoginAuthenticatedHandler userHandler) {
-    new Handler().post(new Runnable() {
+    callbacks.dispatch(new Runnable() {
       public void run() {
         if(userHandler != null) {
           userHandler.authenticated(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.InvalidPassword), null);
@@ -620,8 +1366,18 @@ public class SimpleLogin {
     });
   }
 
+  private void handleValidationFailure(final SimpleLoginAuthenticatedHandler userHandler, final ValidationRule rule) {
+    callbacks.dispatch(new Runnable() {
+      public void run() {
+        if(userHandler != null) {
+          userHandler.authenticated(FirebaseSimpleLoginError.errorFromValidationRule(rule), null);
+        }
+      }
+    });
+  }
+
   private void handleInvalidInvalidToken(final SimpleLoginAuthenticatedHandler userHandler) {
-    new Handler().post(new Runnable() {
+    callbacks.dispatch(new Runnable() {
       public void run() {
         if(userHandler != null) {
           userHandler.authenticated(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.BadProviderToken), null);
@@ -630,13 +1386,49 @@ public class SimpleLogin {
     });
   }
 
-  private void makeRequest(String urlPath, HashMap<String, String> data, final RequestHandler handler) {
-    Uri.Builder b = Uri.parse(this.apiHost).buildUpon();
+  private void makeRequest(String urlPath, Provider provider, HashMap<String, String> data, RequestPriority priority, Trace trace, RequestHandler requestHandler) {
+    makeRequest(urlPath, provider, data, priority, trace, null, requestHandler);
+  }
+
+  private void makeRequest(final String urlPath, final Provider provider, final HashMap<String, String> data, final RequestPriority priority, final Trace trace, final RequestContinuation continuation, final RequestHandler requestHandler) {
+    beginOperation();
+    final RequestHandler handler = new RequestHandler() {
+      public void handle(FirebaseSimpleLoginError error, JSONObject data) {
+        try {
+          requestHandler.handle(error, data);
+        }
+        finally {
+          endOperation();
+        }
+      }
+    };
+
+    long delay = rateLimiter.reserve(urlPath, provider);
+    if (delay == RateLimiter.REJECTED) {
+      callbacks.dispatch(new Runnable() {
+        public void run() {
+          handler.handle(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.RateLimited), null);
+        }
+      });
+    }
+    else if (delay > 0) {
+      BackgroundTimer.get().schedule(new Runnable() {
+        public void run() {
+          RequestScheduler.get().execute(new FetchTask(urlPath, provider, data, continuation, handler, trace), priority, log);
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+    else {
+      RequestScheduler.get().execute(new FetchTask(urlPath, provider, data, continuation, handler, trace), priority, log);
+    }
+  }
+
+  private String pathAndQuery(String urlPath, HashMap<String, String> data) {
+    Uri.Builder b = new Uri.Builder();
     b.path(urlPath);
     b.appendQueryParameter("firebase", this.namespace);
     b.appendQueryParameter("mobile", "android");
-               b.appendQueryParameter("transport", "json");
-
+    b.appendQueryParameter("transport", "json");
 
     if (data != null) {
       for (Map.Entry<String, String> entry : data.entrySet()) {
@@ -645,7 +1437,47 @@ public class SimpleLogin {
         }
       }
     }
-    new FetchTask(handler).execute(b.build().toString());
+    return b.build().toString();
+  }
+
+  /**
+   * Login to Firebase using a secure JWT generated by your own server (Custom Login). Unlike calling Firebase.auth()
+   * directly, the session is saved and restored by checkAuthStatus(), and auth state listeners are notified. No
+   * request is made to the auth server; the returned FirebaseSimpleLoginUser is built from the token's claims.
+   *
+   * @param token Firebase auth token minted by your server; its data must contain a "uid".
+   * @param completionHandler Handler for asynchronous events.
+   */
+  public void loginWithCustomToken(String token, SimpleLoginAuthenticatedHandler completionHandler) {
+    Trace trace = startTrace("loginWithCustomToken");
+    loginWithCustomToken(token, trace, trace.wrapAuthenticated(completionHandler));
+  }
+
+  private void loginWithCustomToken(String token, Trace trace, SimpleLoginAuthenticatedHandler completionHandler) {
+    if (rejectIfClosed(completionHandler)) {
+      return;
+    }
+    FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(token);
+    if (claims == null || claims.getUid() == null) {
+      handleInvalidInvalidToken(completionHandler);
+    }
+    else if (claims.isExpired(System.currentTimeMillis())) {
+      handleError(completionHandler, FirebaseSimpleLoginErrorCode.ExpiredToken);
+    }
+    else {
+      try {
+        JSONObject userData = claims.getDataJson();
+        if (!userData.has("id")) {
+          userData.put("id", claims.getUid());
+        }
+        userData.put("provider", "custom");
+        attemptAuthWithToken(token, Provider.CUSTOM, userData, trace, completionHandler);
+      }
+      catch (JSONException e) {
+        log.warn("Unable to read custom token claims", e);
+        handleInvalidInvalidToken(completionHandler);
+      }
+    }
   }
 
   /**
@@ -656,7 +1488,15 @@ public class SimpleLogin {
    * @param accessToken Access token returned by Facebook SDK.
    * @param completionHandler Handler for asynchronous events.
    */
-  public void loginWithFacebook(final String appId, final String accessToken, final SimpleLoginAuthenticatedHandler completionHandler) {
+  public void loginWithFacebook(final String appId, final String accessToken, SimpleLoginAuthenticatedHandler completionHandler) {
+    Trace trace = startTrace("loginWithFacebook");
+    loginWithFacebook(appId, accessToken, trace, trace.wrapAuthenticated(completionHandler));
+  }
+
+  private void loginWithFacebook(final String appId, final String accessToken, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    if (rejectIfClosed(completionHandler)) {
+      return;
+    }
     if(appId == null || accessToken == null) {
       handleInvalidInvalidToken(completionHandler);
     }
@@ -664,7 +1504,7 @@ public class SimpleLogin {
       HashMap<String, String> data = new HashMap<String, String>();
       data.put("access_token", accessToken);
 
-            loginWithToken(Constants.FIREBASE_AUTH_FACEBOOK_PATH, Provider.FACEBOOK, data, completionHandler);
+            loginWithToken(Constants.FIREBASE_AUTH_FACEBOOK_PATH, Provider.FACEBOOK, data, trace, completionHandler);
         }
   }
 
@@ -675,7 +1515,15 @@ public class SimpleLogin {
      * @param accessToken Access token returned by Facebook SDK.
      * @param completionHandler Handler for asynchronous events.
      */
-    public void loginWithGoogle(final String accessToken, final SimpleLoginAuthenticatedHandler completionHandler) {
+    public void loginWithGoogle(final String accessToken, SimpleLoginAuthenticatedHandler completionHandler) {
+      Trace trace = startTrace("loginWithGoogle");
+      loginWithGoogle(accessToken, trace, trace.wrapAuthenticated(completionHandler));
+    }
+
+    private void loginWithGoogle(final String accessToken, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+        if (rejectIfClosed(completionHandler)) {
+            return;
+        }
         if(accessToken == null) {
             handleInvalidInvalidToken(completionHandler);
         }
@@ -683,7 +1531,7 @@ public class SimpleLogin {
             HashMap<String, String> data = new HashMap<String, String>();
             data.put("access_token", accessToken);
 
-            loginWithToken(Constants.FIREBASE_AUTH_GOOGLE_PATH, Provider.GOOGLE, data, completionHandler);
+            loginWithToken(Constants.FIREBASE_AUTH_GOOGLE_PATH, Provider.GOOGLE, data, trace, completionHandler);
         }
     }
 
@@ -696,7 +1544,15 @@ public class SimpleLogin {
    * @param user_id Twitter numeric user id.
    * @param completionHandler Handler for asynchronous events.
    */
-  public void loginWithTwitter(final String oauth_token, final String oauth_token_secret, final Long user_id, final SimpleLoginAuthenticatedHandler completionHandler) {
+  public void loginWithTwitter(final String oauth_token, final String oauth_token_secret, final Long user_id, SimpleLoginAuthenticatedHandler completionHandler) {
+    Trace trace = startTrace("loginWithTwitter");
+    loginWithTwitter(oauth_token, oauth_token_secret, user_id, trace, trace.wrapAuthenticated(completionHandler));
+  }
+
+  private void loginWithTwitter(final String oauth_token, final String oauth_token_secret, final Long user_id, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    if (rejectIfClosed(completionHandler)) {
+      return;
+    }
     if(oauth_token == null || oauth_token_secret == null || user_id == null) {
       handleInvalidInvalidToken(completionHandler);
     }
@@ -706,12 +1562,115 @@ public class SimpleLogin {
       data.put("oauth_token_secret", oauth_token_secret);
       data.put("user_id", user_id.toString());
 
-      loginWithToken(Constants.FIREBASE_AUTH_TWITTERTOKEN_PATH, Provider.TWITTER, data, completionHandler);
+      loginWithToken(Constants.FIREBASE_AUTH_TWITTERTOKEN_PATH, Provider.TWITTER, data, trace, completionHandler);
+    }
+  }
+
+  /**
+   * Login to Firebase with Twitter reverse auth, in a single operation: Firebase signs the reverse auth request,
+   * the exchanger trades it for the user's Twitter access token on a thread of its own, and Firebase logs in with that
+   * token. The handler is called once, with the logged in user or the first error. The returned
+   * FirebaseSimpleLoginUser object will contain pertinent Twitter data accessible with getThirdPartyUserData().
+   *
+   * @param appId Your Twitter application's API key.
+   * @param exchanger Performs the user-signed access token request to Twitter.
+   * @param completionHandler Handler for asynchronous events.
+   */
+  public void loginWithTwitter(final String appId, final TwitterReverseAuthExchanger exchanger, SimpleLoginAuthenticatedHandler completionHandler) {
+    Trace trace = startTrace("loginWithTwitterReverse");
+    loginWithTwitter(appId, exchanger, trace, trace.wrapAuthenticated(completionHandler));
+  }
+
+  private void loginWithTwitter(final String appId, final TwitterReverseAuthExchanger exchanger, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    if (rejectIfClosed(completionHandler)) {
+      return;
+    }
+    if(appId == null || exchanger == null) {
+      handleInvalidInvalidToken(completionHandler);
+    }
+    else {
+      HashMap<String, String> data = new HashMap<String, String>();
+      data.put("oauth_consumer_key", appId);
+
+      makeRequest(Constants.FIREBASE_AUTH_TWITTERREVERSE_PATH, Provider.TWITTER, data, RequestPriority.INTERACTIVE, trace, new RequestHandler() {
+        public void handle(FirebaseSimpleLoginError error, JSONObject data) {
+          if (error != null) {
+            completionHandler.authenticated(error, null);
+            return;
+          }
+          String reverseAuthParameters = data.optString("oauth", null);
+          if (reverseAuthParameters == null) {
+            completionHandler.authenticated(FirebaseSimpleLoginError.errorFromResponse(data.optJSONObject("error")), null);
+          }
+          else {
+            exchangeTwitterAccessToken(appId, exchanger, reverseAuthParameters, trace, completionHandler);
+          }
+        }
+      });
     }
   }
 
-    private void loginWithToken(final String urlPath, final Provider provider, final HashMap<String, String> data, final SimpleLoginAuthenticatedHandler completionHandler) {
-      makeRequest(urlPath, data, new RequestHandler() {
+  /**
+   * Run the application's exchanger on a thread of its own, so that a slow call to Twitter does not hold one of the
+   * shared request threads, then log in with the access token through the usual rate limited request path.
+   */
+  private void exchangeTwitterAccessToken(final String appId, final TwitterReverseAuthExchanger exchanger, final String reverseAuthParameters, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+    beginOperation();
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          exchange();
+        }
+        finally {
+          endOperation();
+        }
+      }
+
+      private void exchange() {
+        Trace exchangeTrace = trace.child("twitter");
+        Map<String, String> accessToken;
+        try {
+          accessToken = FirebaseUtils.parseFormEncoded(exchanger.requestAccessToken(appId, reverseAuthParameters));
+          exchangeTrace.finish(null);
+        }
+        catch (IOException e) {
+          failed(exchangeTrace, e);
+          return;
+        }
+        catch (RuntimeException e) {
+          // Application code; its bugs must not lose the login callback
+          failed(exchangeTrace, e);
+          return;
+        }
+        HashMap<String, String> tokenData = new HashMap<String, String>();
+        for (String key : new String[] { "oauth_token", "oauth_token_secret", "user_id" }) {
+          String value = accessToken.get(key);
+          if (value == null) {
+            if (log.isEnabled(LogLevel.WARN)) {
+              log.warn("Twitter reverse auth response has no " + key, null);
+            }
+            handleError(completionHandler, FirebaseSimpleLoginErrorCode.Unknown);
+            return;
+          }
+          tokenData.put(key, value);
+        }
+        if (!rejectIfClosed(completionHandler)) {
+          loginWithToken(Constants.FIREBASE_AUTH_TWITTERTOKEN_PATH, Provider.TWITTER, tokenData, trace, completionHandler);
+        }
+      }
+
+      private void failed(Trace exchangeTrace, Exception e) {
+        exchangeTrace.finish(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.Unknown));
+        log.warn("Twitter reverse auth token request failed", e);
+        handleError(completionHandler, FirebaseSimpleLoginErrorCode.Unknown);
+      }
+    }, "FirebaseSimpleLogin-TwitterReverseAuth");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+    private void loginWithToken(final String urlPath, final Provider provider, final HashMap<String, String> data, final Trace trace, final SimpleLoginAuthenticatedHandler completionHandler) {
+      makeRequest(urlPath, provider, data, RequestPriority.INTERACTIVE, trace, new RequestHandler() {
         public void handle(FirebaseSimpleLoginError error, JSONObject data) {
           if (error != null) {
             completionHandler.authenticated(error, null);
@@ -731,12 +1690,12 @@ public class SimpleLogin {
                   completionHandler.authenticated(theError, null);
                 }
                 else {
-                  attemptAuthWithToken(token, provider, userData, completionHandler);
+                  attemptAuthWithToken(token, provider, userData, trace, completionHandler);
                 }
               }
             }
             catch (JSONException e) {
-              e.printStackTrace();
+              log.warn("Unable to parse auth server response", e);
               FirebaseSimpleLoginError theError = FirebaseSimpleLoginError.errorFromResponse(null);
               completionHandler.authenticated(theError, null);
             }
@@ -746,41 +1705,143 @@ public class SimpleLogin {
     }
 
   /**
-   * FetchTask class.
+   * Fetches from the auth server on a request thread, runs any continuation, and hands the result to the callback
+   * dispatcher.
    */
-  class FetchTask extends AsyncTask<String, Void, JSONObject> {
+  class FetchTask implements Runnable {
 
-    private RequestHandler handler;
+    private final String urlPath;
+    private final Provider provider;
+    private final HashMap<String, String> data;
+    private final RequestContinuation continuation;
+    private final RequestHandler handler;
+    private final Trace trace;
 
-    public FetchTask(RequestHandler handler) {
-      super();
+    FetchTask(String urlPath, Provider provider, HashMap<String, String> data, RequestContinuation continuation, RequestHandler handler, Trace trace) {
+      this.urlPath = urlPath;
+      this.provider = provider;
+      this.data = data;
+      this.continuation = continuation;
       this.handler = handler;
+      this.trace = trace;
     }
 
-    @Override
-    protected JSONObject doInBackground(String... arg) {
-      DefaultHttpClient httpClient = new DefaultHttpClient();
-      HttpGet httpGet = new HttpGet(arg[0]);
-      JSONObject result = null;
+    public void run() {
+      JSONObject response = null;
+      FirebaseSimpleLoginErrorCode errorCode = FirebaseSimpleLoginErrorCode.Unknown;
       try {
-        result = httpClient.execute(httpGet, new JsonBasicResponseHandler());
+        // makeRequest() has already reserved the permit for the first attempt
+        JSONObject result = fetch(urlPath, provider, data, true, trace);
+        if (continuation != null) {
+          result = continuation.proceed(result);
+        }
+        response = result;
       }
-      catch (IOException e) {
-        e.printStackTrace();
+      catch (AuthRequestException e) {
+        errorCode = e.getCode();
+      }
+      catch (RuntimeException e) {
+        log.error("Auth server request failed", e);
+      }
+      finally {
+        // Whatever happened, the handler is called once, so the caller hears back and the operation ends
+        deliver(response, errorCode);
       }
-      return result;
     }
 
-    @Override
-    protected void onPostExecute(JSONObject result) {
-      // Method is automatically called on main thread
-      super.onPostExecute(result);
-      if (result == null) {
-        handler.handle(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.Unknown), null);
+    private void deliver(final JSONObject result, final FirebaseSimpleLoginErrorCode resultErrorCode) {
+      callbacks.dispatch(new Runnable() {
+        public void run() {
+          if (result == null) {
+            handler.handle(FirebaseSimpleLoginError.errorFromCode(resultErrorCode), null);
+          }
+          else {
+            handler.handle(null, result);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Blocking request to the auth server. Must not be called on the main thread.
+   *
+   * Only a parsed JSON response to a 2xx status counts as an answer. Logins and token exchanges are idempotent, so
+   * they fail over to the next endpoint, up to MAX_ENDPOINT_ATTEMPTS, on any failure. Requests that change an
+   * account fail over only if the connection could not be established, since after that the server may already
+   * have acted on them, and resending could report EmailTaken for the account just created or send a second reset
+   * email.
+   *
+   * Every attempt takes a rate limit permit, waiting for it on this thread, except a first attempt whose permit the
+   * caller has already reserved.
+   *
+   * @param permitReserved Whether the caller reserved the permit for the first attempt.
+   * @return The parsed response.
+   * @throws AuthRequestException If no endpoint answered, or the rate limit rejected an attempt.
+   */
+  private JSONObject fetch(String urlPath, Provider provider, HashMap<String, String> data, boolean permitReserved, Trace trace) throws AuthRequestException {
+    HttpTransport transport = transport();
+    if (transport == null) {
+      throw new AuthRequestException(FirebaseSimpleLoginErrorCode.ClientClosed);
+    }
+    String pathAndQuery = pathAndQuery(urlPath, data);
+    boolean idempotent = isIdempotent(urlPath);
+    int attempts = 0;
+    for (EndpointSelector.Endpoint endpoint : endpoints.candidates()) {
+      if (attempts++ == MAX_ENDPOINT_ATTEMPTS) {
+        break;
       }
-      else {
-        handler.handle(null, result);
+      if ((attempts > 1 || !permitReserved) && !rateLimiter.acquire(urlPath, provider)) {
+        throw new AuthRequestException(FirebaseSimpleLoginErrorCode.RateLimited);
+      }
+      long start = System.nanoTime();
+      Trace httpTrace = trace.child("http");
+      JSONObject result;
+      try {
+        result = transport.get(endpoint.getHost() + pathAndQuery, log, httpTrace);
+      }
+      catch (IOException e) {
+        httpTrace.finish(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.Unknown));
+        endpoints.recordFailure(endpoint);
+        if (log.isEnabled(LogLevel.WARN)) {
+          log.warn("Auth server request to " + endpoint.getHost() + " failed", e);
+        }
+        if (idempotent || isConnectFailure(e)) {
+          continue;
+        }
+        break;
+      }
+      if (result != null) {
+        endpoints.recordSuccess(endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        httpTrace.finish(null);
+        return result;
+      }
+      // An error status or a body that is not JSON: the endpoint answered, but not usefully
+      httpTrace.finish(FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.Unknown));
+      endpoints.recordFailure(endpoint);
+      if (!idempotent) {
+        break;
       }
     }
+    throw new AuthRequestException(FirebaseSimpleLoginErrorCode.Unknown);
+  }
+
+  /**
+   * @return Whether the request only logs in or exchanges a token, so that sending it twice is harmless.
+   */
+  private static boolean isIdempotent(String urlPath) {
+    return Constants.FIREBASE_AUTH_PASSWORD_PATH.equals(urlPath)
+        || Constants.FIREBASE_AUTH_ANONYMOUS_PATH.equals(urlPath)
+        || Constants.FIREBASE_AUTH_FACEBOOK_PATH.equals(urlPath)
+        || Constants.FIREBASE_AUTH_GOOGLE_PATH.equals(urlPath)
+        || Constants.FIREBASE_AUTH_TWITTERREVERSE_PATH.equals(urlPath)
+        || Constants.FIREBASE_AUTH_TWITTERTOKEN_PATH.equals(urlPath);
+  }
+
+  /**
+   * @return Whether the request failed before it could reach the server.
+   */
+  private static boolean isConnectFailure(IOException e) {
+    return e instanceof ConnectException || e instanceof UnknownHostException || e instanceof ConnectTimeoutException;
   }
 }
@@ -0,0 +1,24 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.AuthEvent;
+
+/**
+ * Listener for auth state changes published by SimpleLogin.
+ *
+ * @author Firebase
+ *
+ */
+public interface SimpleLoginAuthStateListener {
+
+  /**
+   * Method called when the auth state changes.
+   *
+   * Rapid changes are coalesced, so only the latest state is delivered and a state identical to the one
+   * last delivered is dropped.
+   *
+   * @param event The kind of transition that occurred.
+   * @param user The logged in user; null after LOGOUT or REVOKED.
+   */
+  public void authStateChanged(AuthEvent event, FirebaseSimpleLoginUser user);
+
+}
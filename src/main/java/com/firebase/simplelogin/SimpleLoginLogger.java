@@ -0,0 +1,24 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.LogLevel;
+
+/**
+ * Logger for diagnostic messages from the simple login library.
+ *
+ * Messages are handed to the logger on a background thread, never on the thread performing the auth operation.
+ *
+ * @author Firebase
+ *
+ */
+public interface SimpleLoginLogger {
+
+  /**
+   * Method called for each message at or above the configured log level.
+   *
+   * @param level Level of the message.
+   * @param message The message.
+   * @param throwable Associated exception; may be null.
+   */
+  public void log(LogLevel level, String message, Throwable throwable);
+
+}
@@ -1,14 +1,52 @@
 package com.firebase.simplelogin;
 
+import com.firebase.simplelogin.enums.LogLevel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 public class SimpleLoginOptions {
 
   private boolean debug;
+  private long authEventCoalesceMillis;
+  private boolean optimisticRestore;
+  private boolean prewarmConnection;
+  private SimpleLoginLogger logger;
+  private LogLevel logLevel;
+  private double rateLimitPerSecond;
+  private int rateLimitBurst;
+  private long rateLimitMaxWaitMillis;
+  private List<String> apiHosts;
+  private int anonymousSessionPoolSize;
+  private SimpleLoginTracer tracer;
+  private long failedLoginCacheMillis;
+  private SimpleLoginValidationPolicy validationPolicy;
+  private Executor callbackExecutor;
+  private SimpleLoginSessionStore sessionStore;
+  private String sessionKey;
 
   /**
    * Simple Login Options constructor.
    */
   public SimpleLoginOptions() {
     debug = false;
+    authEventCoalesceMillis = 250;
+    optimisticRestore = false;
+    prewarmConnection = false;
+    logger = null;
+    logLevel = null;
+    rateLimitPerSecond = 0;
+    rateLimitBurst = 1;
+    rateLimitMaxWaitMillis = 0;
+    apiHosts = null;
+    anonymousSessionPoolSize = 0;
+    tracer = null;
+    failedLoginCacheMillis = 0;
+    validationPolicy = null;
+    callbackExecutor = null;
+    sessionStore = null;
+    sessionKey = "jsonTokenData";
   }
 
   /**
@@ -26,4 +64,262 @@ public class SimpleLoginOptions {
     return debug;
   }
 
+  /**
+   * @param authEventCoalesceMillis How long auth state changes are held back so that rapid flapping (e.g. during a
+   * reconnect) is delivered to SimpleLoginAuthStateListeners as a single event. Zero delivers immediately.
+   */
+  public SimpleLoginOptions setAuthEventCoalesceMillis(long authEventCoalesceMillis) {
+    this.authEventCoalesceMillis = Math.max(0, authEventCoalesceMillis);
+    return this;
+  }
+
+  /**
+   * @return the auth event coalescing window, in milliseconds
+   */
+  public long getAuthEventCoalesceMillis() {
+    return authEventCoalesceMillis;
+  }
+
+  /**
+   * @param optimisticRestore Set to true to have checkAuthStatus() return a saved user immediately, without waiting
+   * for Firebase to accept its token. The token is still validated in the background; if Firebase rejects it as
+   * invalid or expired, the saved session is cleared and auth state listeners receive a REVOKED event. Other failures,
+   * such as being offline, leave the user logged in, and a login or logout started meanwhile always takes precedence.
+   */
+  public SimpleLoginOptions setOptimisticRestore(boolean optimisticRestore) {
+    this.optimisticRestore = optimisticRestore;
+    return this;
+  }
+
+  /**
+   * @return the optimistic restore flag value
+   */
+  public boolean isOptimisticRestore() {
+    return optimisticRestore;
+  }
+
+  /**
+   * @param prewarmConnection Set to true to resolve and connect to the auth server in the background as soon as
+   * SimpleLogin is constructed, so the first login reuses the warm connection and TLS session.
+   */
+  public SimpleLoginOptions setPrewarmConnection(boolean prewarmConnection) {
+    this.prewarmConnection = prewarmConnection;
+    return this;
+  }
+
+  /**
+   * @return the prewarm connection flag value
+   */
+  public boolean isPrewarmConnection() {
+    return prewarmConnection;
+  }
+
+  /**
+   * @param logger Logger for diagnostic messages. Defaults to standard error.
+   */
+  public SimpleLoginOptions setLogger(SimpleLoginLogger logger) {
+    this.logger = logger;
+    return this;
+  }
+
+  /**
+   * @return the logger, or null for the default
+   */
+  public SimpleLoginLogger getLogger() {
+    return logger;
+  }
+
+  /**
+   * @param logLevel Minimum level of messages to log. Defaults to DEBUG in debug mode and WARN otherwise.
+   */
+  public SimpleLoginOptions setLogLevel(LogLevel logLevel) {
+    this.logLevel = logLevel;
+    return this;
+  }
+
+  /**
+   * @return the log level, or null for the default
+   */
+  public LogLevel getLogLevel() {
+    return logLevel;
+  }
+
+  /**
+   * Enable client-side rate limiting of auth server requests. Each endpoint and provider gets its own token bucket.
+   *
+   * @param permitsPerSecond Sustained requests per second per endpoint and provider; zero disables rate limiting.
+   * @param burst Number of requests that may be sent back to back before throttling starts.
+   */
+  public SimpleLoginOptions setRateLimit(double permitsPerSecond, int burst) {
+    this.rateLimitPerSecond = Math.max(0, permitsPerSecond);
+    this.rateLimitBurst = Math.max(1, burst);
+    return this;
+  }
+
+  /**
+   * @return the rate limit in requests per second, or zero if disabled
+   */
+  public double getRateLimitPerSecond() {
+    return rateLimitPerSecond;
+  }
+
+  /**
+   * @return the rate limit burst size
+   */
+  public int getRateLimitBurst() {
+    return rateLimitBurst;
+  }
+
+  /**
+   * @param rateLimitMaxWaitMillis How long a throttled request may be delayed before it fails with a RateLimited
+   * error instead. Zero fails throttled requests immediately.
+   */
+  public SimpleLoginOptions setRateLimitMaxWaitMillis(long rateLimitMaxWaitMillis) {
+    this.rateLimitMaxWaitMillis = Math.max(0, rateLimitMaxWaitMillis);
+    return this;
+  }
+
+  /**
+   * @return the maximum time a throttled request is delayed, in milliseconds
+   */
+  public long getRateLimitMaxWaitMillis() {
+    return rateLimitMaxWaitMillis;
+  }
+
+  /**
+   * @param apiHosts Auth server endpoints, e.g. "https://auth.firebase.com". Requests are routed to the endpoint with
+   * the lowest observed latency and fail over to the others. Defaults to the Firebase auth server.
+   */
+  public SimpleLoginOptions setApiHosts(List<String> apiHosts) {
+    this.apiHosts = apiHosts == null || apiHosts.isEmpty() ? null : new ArrayList<String>(apiHosts);
+    return this;
+  }
+
+  /**
+   * @return the auth server endpoints, or null for the default
+   */
+  public List<String> getApiHosts() {
+    return apiHosts;
+  }
+
+  /**
+   * @param anonymousSessionPoolSize Number of anonymous sessions to obtain ahead of time, so that loginAnonymously()
+   * can skip the auth server round trip. The pool is filled by the first anonymous login and grows with demand;
+   * zero disables it.
+   */
+  public SimpleLoginOptions setAnonymousSessionPoolSize(int anonymousSessionPoolSize) {
+    this.anonymousSessionPoolSize = Math.max(0, anonymousSessionPoolSize);
+    return this;
+  }
+
+  /**
+   * @return the anonymous session pool size
+   */
+  public int getAnonymousSessionPoolSize() {
+    return anonymousSessionPoolSize;
+  }
+
+  /**
+   * @param tracer Tracer that receives a span for each stage of every auth operation; null disables tracing.
+   */
+  public SimpleLoginOptions setTracer(SimpleLoginTracer tracer) {
+    this.tracer = tracer;
+    return this;
+  }
+
+  /**
+   * @return the tracer, or null if tracing is disabled
+   */
+  public SimpleLoginTracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * @param failedLoginCacheMillis How long an email/password login rejected with UserDoesNotExist or InvalidPassword
+   * is answered locally with the same error instead of contacting the auth server again. Credentials are only kept
+   * as salted hashes. Zero disables the cache.
+   */
+  public SimpleLoginOptions setFailedLoginCacheMillis(long failedLoginCacheMillis) {
+    this.failedLoginCacheMillis = Math.max(0, failedLoginCacheMillis);
+    return this;
+  }
+
+  /**
+   * @return how long failed logins are cached, in milliseconds; zero if disabled
+   */
+  public long getFailedLoginCacheMillis() {
+    return failedLoginCacheMillis;
+  }
+
+  /**
+   * @param validationPolicy Rules that emails and passwords are checked against locally before createUser,
+   * loginWithEmail and changePassword contact the auth server. Rejected input fails with InvalidEmail or
+   * InvalidPassword, and FirebaseSimpleLoginError.getValidationRule() names the rule. Defaults to null, which only
+   * rejects blank input and emails without an "@".
+   */
+  public SimpleLoginOptions setValidationPolicy(SimpleLoginValidationPolicy validationPolicy) {
+    this.validationPolicy = validationPolicy;
+    return this;
+  }
+
+  /**
+   * @return the validation policy, or null if only the basic checks are made
+   */
+  public SimpleLoginValidationPolicy getValidationPolicy() {
+    return validationPolicy;
+  }
+
+  /**
+   * @param callbackExecutor Executor that completion handlers are called on. Callbacks that complete together are
+   * handed to it as a single task. Defaults to null, which calls them on the main thread.
+   */
+  public SimpleLoginOptions setCallbackExecutor(Executor callbackExecutor) {
+    this.callbackExecutor = callbackExecutor;
+    return this;
+  }
+
+  /**
+   * @return the executor completion handlers are called on, or null for the main thread
+   */
+  public Executor getCallbackExecutor() {
+    return callbackExecutor;
+  }
+
+  /**
+   * @param sessionStore Where sessions are saved for checkAuthStatus(), e.g. a shared key-value service so that a
+   * session can be restored by any process serving the user. Reads are cached locally until the store reports the key
+   * invalidated. Defaults to null, which saves sessions in the application's SharedPreferences.
+   */
+  public SimpleLoginOptions setSessionStore(SimpleLoginSessionStore sessionStore) {
+    this.sessionStore = sessionStore;
+    return this;
+  }
+
+  /**
+   * @return the session store, or null for SharedPreferences
+   */
+  public SimpleLoginSessionStore getSessionStore() {
+    return sessionStore;
+  }
+
+  /**
+   * @param sessionKey Key the session is saved under. With a shared session store, use a key that identifies the
+   * user's client, e.g. a device or browser session id, so that sessions of different clients do not overwrite each
+   * other.
+   */
+  public SimpleLoginOptions setSessionKey(String sessionKey) {
+    if (sessionKey == null || sessionKey.length() == 0) {
+      throw new IllegalArgumentException("sessionKey must not be empty");
+    }
+    this.sessionKey = sessionKey;
+    return this;
+  }
+
+  /**
+   * @return the key the session is saved under
+   */
+  public String getSessionKey() {
+    return sessionKey;
+  }
+
 }
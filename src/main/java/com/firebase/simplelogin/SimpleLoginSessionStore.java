@@ -0,0 +1,58 @@
+package com.firebase.simplelogin;
+
+/**
+ * Storage for saved login sessions, so that checkAuthStatus() can restore them.
+ *
+ * By default sessions are kept in the application's SharedPreferences. Implement this interface on top of a shared
+ * key-value service to let every process that serves a user restore the same session instead of logging in again.
+ * Values are opaque strings containing the user's auth token; store them as securely as the token itself.
+ *
+ * SimpleLogin keeps a local read-through cache of values it has read or written, so implementations should report
+ * changes made by other processes through the registered invalidation listeners, e.g. from a pub/sub channel.
+ * All methods may be called from any thread; get() runs on the thread that calls checkAuthStatus() when the value is
+ * not cached, so keep it fast or back it with a local replica.
+ *
+ * @author Firebase
+ *
+ */
+public interface SimpleLoginSessionStore {
+
+  /**
+   * @param key Session key, see SimpleLoginOptions.setSessionKey.
+   * @return The stored value, or null if there is none.
+   */
+  public String get(String key);
+
+  /**
+   * Store a value, replacing any previous one.
+   */
+  public void put(String key, String value);
+
+  /**
+   * Remove the value for a key, if any.
+   */
+  public void remove(String key);
+
+  /**
+   * Register a listener to be called whenever the value of a key may have been changed by another client.
+   */
+  public void addInvalidationListener(InvalidationListener listener);
+
+  /**
+   * Unregister a listener added with addInvalidationListener.
+   */
+  public void removeInvalidationListener(InvalidationListener listener);
+
+  /**
+   * Receives invalidation messages from a session store.
+   */
+  public interface InvalidationListener {
+
+    /**
+     * @param key Key whose value changed or was removed.
+     */
+    public void invalidated(String key);
+
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.firebase.simplelogin;
+
+import java.util.Map;
+
+/**
+ * Hooks for tracing the stages of auth operations.
+ *
+ * Each public SimpleLogin operation starts a root span named after the method (e.g. "loginWithEmail"), which is
+ * finished when its handler is called. Child spans cover each stage: "http" for every auth server request
+ * attempt, "json" for parsing its response, "auth" for Firebase.auth(), and "session" for persisting the session.
+ * The parent span is carried through the asynchronous callbacks, so spans nest correctly across threads.
+ *
+ * @author Firebase
+ *
+ */
+public interface SimpleLoginTracer {
+
+  /**
+   * A timed stage of an auth operation.
+   */
+  public interface Span {
+
+    /**
+     * Method called when the stage completes.
+     *
+     * @param error The error the stage ended with; null on success.
+     */
+    public void finish(FirebaseSimpleLoginError error);
+
+  }
+
+  /**
+   * Method called when a stage starts.
+   *
+   * @param name Name of the stage.
+   * @param parent Enclosing span; null for the root span of an operation.
+   * @return The new span.
+   */
+  public Span startSpan(String name, Span parent);
+
+  /**
+   * Method called before each auth server request, to propagate trace context to the server.
+   *
+   * @param span The "http" span of the request.
+   * @param headers Map to which headers for the request may be added.
+   */
+  public void inject(Span span, Map<String, String> headers);
+
+}
@@ -0,0 +1,144 @@
+package com.firebase.simplelogin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rules that emails and passwords are checked against before createUser, loginWithEmail and changePassword contact
+ * the auth server. Set it with SimpleLoginOptions.setValidationPolicy; it is compiled once when the SimpleLogin
+ * instance is created, so later changes to the policy object have no effect on that instance.
+ *
+ * Password rules only apply to new passwords (createUser and the new password of changePassword), so accounts
+ * created under an older policy can still log in.
+ *
+ * @author Firebase
+ *
+ */
+public class SimpleLoginValidationPolicy {
+
+  private boolean internationalEmails;
+  private int minPasswordLength;
+  private int maxPasswordLength;
+  private boolean requireLetter;
+  private boolean requireDigit;
+  private List<String> blockedDomains;
+  private double blockedDomainFalsePositiveRate;
+
+  /**
+   * Validation policy constructor. By default emails must be syntactically valid addresses with a host name of
+   * at least two labels, internationalized addresses are accepted, and passwords must not be blank.
+   */
+  public SimpleLoginValidationPolicy() {
+    internationalEmails = true;
+    minPasswordLength = 1;
+    maxPasswordLength = 0;
+    requireLetter = false;
+    requireDigit = false;
+    blockedDomains = Collections.emptyList();
+    blockedDomainFalsePositiveRate = 0.001;
+  }
+
+  /**
+   * @param internationalEmails Whether non-ASCII characters are accepted in the local part and in domain labels
+   * (internationalized domain names). When false, addresses must be plain ASCII; punycode ("xn--") domains are
+   * accepted either way.
+   */
+  public SimpleLoginValidationPolicy setInternationalEmails(boolean internationalEmails) {
+    this.internationalEmails = internationalEmails;
+    return this;
+  }
+
+  /**
+   * @return whether non-ASCII addresses are accepted
+   */
+  public boolean isInternationalEmails() {
+    return internationalEmails;
+  }
+
+  /**
+   * @param minPasswordLength Minimum number of characters in a new password; at least 1.
+   * @param maxPasswordLength Maximum number of characters in a new password, or 0 for no limit.
+   */
+  public SimpleLoginValidationPolicy setPasswordLength(int minPasswordLength, int maxPasswordLength) {
+    this.minPasswordLength = Math.max(1, minPasswordLength);
+    this.maxPasswordLength = Math.max(0, maxPasswordLength);
+    return this;
+  }
+
+  /**
+   * @return the minimum length of a new password
+   */
+  public int getMinPasswordLength() {
+    return minPasswordLength;
+  }
+
+  /**
+   * @return the maximum length of a new password, or 0 for no limit
+   */
+  public int getMaxPasswordLength() {
+    return maxPasswordLength;
+  }
+
+  /**
+   * @param requireLetter Whether a new password must contain at least one letter.
+   * @param requireDigit Whether a new password must contain at least one digit.
+   */
+  public SimpleLoginValidationPolicy setPasswordCharacterClasses(boolean requireLetter, boolean requireDigit) {
+    this.requireLetter = requireLetter;
+    this.requireDigit = requireDigit;
+    return this;
+  }
+
+  /**
+   * @return whether a new password must contain a letter
+   */
+  public boolean isRequireLetter() {
+    return requireLetter;
+  }
+
+  /**
+   * @return whether a new password must contain a digit
+   */
+  public boolean isRequireDigit() {
+    return requireDigit;
+  }
+
+  /**
+   * Reject emails whose domain, or any parent domain, is in the given list, e.g. disposable email providers.
+   * The list is compiled into a compact bloom filter, so a small fraction of other domains (see
+   * setBlockedDomainFalsePositiveRate) is rejected as well. Domains are compared case-insensitively and must be
+   * given in the same form users type them (Unicode or punycode).
+   *
+   * @param blockedDomains Domains such as "mailinator.com".
+   */
+  public SimpleLoginValidationPolicy setBlockedDomains(Collection<String> blockedDomains) {
+    this.blockedDomains = blockedDomains == null ? Collections.<String>emptyList() : new ArrayList<String>(blockedDomains);
+    return this;
+  }
+
+  /**
+   * @return the blocked domains
+   */
+  public List<String> getBlockedDomains() {
+    return Collections.unmodifiableList(blockedDomains);
+  }
+
+  /**
+   * @param blockedDomainFalsePositiveRate Target probability that a domain not on the blocklist is rejected; smaller
+   * values use more memory. Defaults to 0.001.
+   */
+  public SimpleLoginValidationPolicy setBlockedDomainFalsePositiveRate(double blockedDomainFalsePositiveRate) {
+    this.blockedDomainFalsePositiveRate = Math.min(0.5, Math.max(1e-9, blockedDomainFalsePositiveRate));
+    return this;
+  }
+
+  /**
+   * @return the target false positive rate of the domain blocklist
+   */
+  public double getBlockedDomainFalsePositiveRate() {
+    return blockedDomainFalsePositiveRate;
+  }
+
+}
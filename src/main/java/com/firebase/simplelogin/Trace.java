@@ -0,0 +1,92 @@
+package com.firebase.simplelogin;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A span of a SimpleLoginTracer, passed explicitly through the asynchronous stages of an operation.
+ *
+ * Trace.NONE is used when no tracer is configured; all of its methods are no-ops.
+ *
+ * @author Firebase
+ *
+ */
+final class Trace {
+
+  static final Trace NONE = new Trace(null, null);
+
+  private final SimpleLoginTracer tracer;
+  private final SimpleLoginTracer.Span span;
+  private final AtomicBoolean finished = new AtomicBoolean();
+
+  private Trace(SimpleLoginTracer tracer, SimpleLoginTracer.Span span) {
+    this.tracer = tracer;
+    this.span = span;
+  }
+
+  static Trace start(SimpleLoginTracer tracer, String name) {
+    return tracer == null ? NONE : new Trace(tracer, tracer.startSpan(name, null));
+  }
+
+  Trace child(String name) {
+    return tracer == null ? NONE : new Trace(tracer, tracer.startSpan(name, span));
+  }
+
+  /**
+   * Finish the span; only the first call has any effect.
+   */
+  void finish(FirebaseSimpleLoginError error) {
+    if (span != null && finished.compareAndSet(false, true)) {
+      span.finish(error);
+    }
+  }
+
+  void inject(HttpUriRequest request) {
+    if (tracer == null) {
+      return;
+    }
+    Map<String, String> headers = new HashMap<String, String>();
+    tracer.inject(span, headers);
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      request.addHeader(header.getKey(), header.getValue());
+    }
+  }
+
+  /**
+   * @return A handler that finishes this span before delegating to handler.
+   */
+  SimpleLoginAuthenticatedHandler wrapAuthenticated(final SimpleLoginAuthenticatedHandler handler) {
+    if (tracer == null) {
+      return handler;
+    }
+    return new SimpleLoginAuthenticatedHandler() {
+      public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
+        finish(error);
+        if (handler != null) {
+          handler.authenticated(error, user);
+        }
+      }
+    };
+  }
+
+  /**
+   * @return A handler that finishes this span before delegating to handler.
+   */
+  SimpleLoginCompletionHandler wrapCompletion(final SimpleLoginCompletionHandler handler) {
+    if (tracer == null) {
+      return handler;
+    }
+    return new SimpleLoginCompletionHandler() {
+      public void completed(FirebaseSimpleLoginError error, boolean success) {
+        finish(error);
+        if (handler != null) {
+          handler.completed(error, success);
+        }
+      }
+    };
+  }
+
+}
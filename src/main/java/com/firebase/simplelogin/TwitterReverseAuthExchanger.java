@@ -0,0 +1,26 @@
+package com.firebase.simplelogin;
+
+import java.io.IOException;
+
+/**
+ * Performs the user-signed step of Twitter reverse auth for SimpleLogin.loginWithTwitter(String,
+ * TwitterReverseAuthExchanger, SimpleLoginAuthenticatedHandler), typically with the Twitter account on the device.
+ *
+ * @author Firebase
+ *
+ */
+public interface TwitterReverseAuthExchanger {
+
+  /**
+   * Request an access token from Twitter's https://api.twitter.com/oauth/access_token endpoint, with
+   * x_reverse_auth_target set to the consumer key and x_reverse_auth_parameters set to the parameters signed by
+   * Firebase, signing the request as the user. Called on a background thread; blocking is fine.
+   *
+   * @param consumerKey Your Twitter application's API key.
+   * @param reverseAuthParameters The signed reverse auth parameters from Firebase.
+   * @return Twitter's form encoded response, containing oauth_token, oauth_token_secret and user_id.
+   * @throws IOException if the request to Twitter failed.
+   */
+  public String requestAccessToken(String consumerKey, String reverseAuthParameters) throws IOException;
+
+}
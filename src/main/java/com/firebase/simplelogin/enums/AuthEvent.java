@@ -0,0 +1,26 @@
+package com.firebase.simplelogin.enums;
+
+/**
+ * Auth state transitions published to SimpleLoginAuthStateListener instances.
+ *
+ * @author Firebase
+ *
+ */
+public enum AuthEvent {
+  /**
+   * A user logged in, or a saved session was restored.
+   */
+  LOGIN,
+  /**
+   * The user logged out, or the Firebase connection is no longer authenticated.
+   */
+  LOGOUT,
+  /**
+   * Firebase revoked the user's token, e.g. because it expired.
+   */
+  REVOKED,
+  /**
+   * The logged in user was re-authenticated with a new or refreshed token.
+   */
+  REFRESH;
+}
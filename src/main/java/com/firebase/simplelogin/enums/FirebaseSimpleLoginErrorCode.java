@@ -41,6 +41,26 @@ public enum FirebaseSimpleLoginErrorCode {
    * The 3rd party token is invalid.
    */
   BadProviderToken,
+  /**
+   * The request was throttled by the client-side rate limit.
+   */
+  RateLimited,
+  /**
+   * The SimpleLogin instance has been shut down.
+   */
+  ClientClosed,
+  /**
+   * Every connection in a FirebaseConnectionPool is in use.
+   */
+  PoolExhausted,
+  /**
+   * createUserAndLogin() created the account, but could not log in to it. See FirebaseSimpleLoginError.getCause().
+   */
+  UserCreatedLoginFailed,
+  /**
+   * changePasswordAndLogin() changed the password, but could not log in with it. See FirebaseSimpleLoginError.getCause().
+   */
+  PasswordChangedLoginFailed,
 
   // From FirebaseError
   /**
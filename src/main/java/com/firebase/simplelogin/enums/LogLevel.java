@@ -0,0 +1,30 @@
+package com.firebase.simplelogin.enums;
+
+/**
+ * Log levels for SimpleLoginLogger, from most to least verbose.
+ *
+ * @author Firebase
+ *
+ */
+public enum LogLevel {
+  /**
+   * Detailed diagnostics, e.g. individual auth server exchanges.
+   */
+  DEBUG,
+  /**
+   * Informational messages.
+   */
+  INFO,
+  /**
+   * Recoverable problems, e.g. an unparseable auth server response.
+   */
+  WARN,
+  /**
+   * Failures that prevent an operation from completing.
+   */
+  ERROR,
+  /**
+   * Logging disabled.
+   */
+  NONE;
+}
@@ -61,5 +61,40 @@ public enum Provider {
   /**
    * Anonymous.
    */
-  ANONYMOUS;
+  ANONYMOUS,
+  /**
+   * Custom login with a token minted by your own server.
+   */
+  CUSTOM;
+
+  private static final Provider[] LOOKUP = values();
+
+  /**
+   * Look up a provider by name, ignoring case and surrounding whitespace. Unlike valueOf(), this never throws
+   * and does not allocate, so it is safe to use on untrusted or persisted input.
+   *
+   * @param name Provider name, e.g. "password" or "facebook".
+   * @return The matching provider, or INVALID if the name is null, empty or unknown.
+   */
+  public static Provider fromString(String name) {
+    if (name == null) {
+      return INVALID;
+    }
+    int start = 0;
+    int end = name.length();
+    while (start < end && name.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && name.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    int length = end - start;
+    for (int i = 0; i < LOOKUP.length; i++) {
+      String candidate = LOOKUP[i].name();
+      if (candidate.length() == length && candidate.regionMatches(true, 0, name, start, length)) {
+        return LOOKUP[i];
+      }
+    }
+    return INVALID;
+  }
 }
@@ -0,0 +1,19 @@
+package com.firebase.simplelogin.enums;
+
+/**
+ * Scheduling class of a request to the auth server.
+ *
+ * @author Firebase
+ *
+ */
+public enum RequestPriority {
+  /**
+   * A user is waiting for the result, e.g. on a login screen. Always served before background requests.
+   */
+  INTERACTIVE,
+  /**
+   * Batch or housekeeping work, e.g. bulk account creation. Runs when no interactive request is waiting, and never
+   * occupies every request thread.
+   */
+  BACKGROUND;
+}
@@ -0,0 +1,47 @@
+package com.firebase.simplelogin.enums;
+
+/**
+ * Pre-flight validation rules. A rejected email or password reports the first rule it failed through
+ * FirebaseSimpleLoginError.getValidationRule().
+ *
+ * @author Firebase
+ *
+ */
+public enum ValidationRule {
+  /**
+   * The email was null or blank.
+   */
+  EMAIL_REQUIRED,
+  /**
+   * The email is not a valid address: bad characters, misplaced dots, a missing or repeated "@", or too long.
+   */
+  EMAIL_SYNTAX,
+  /**
+   * The part after the "@" is not a valid host name.
+   */
+  EMAIL_DOMAIN,
+  /**
+   * The email's domain is on the configured blocklist.
+   */
+  EMAIL_BLOCKED_DOMAIN,
+  /**
+   * The password was null or blank.
+   */
+  PASSWORD_REQUIRED,
+  /**
+   * The password is shorter than the policy's minimum length.
+   */
+  PASSWORD_TOO_SHORT,
+  /**
+   * The password is longer than the policy's maximum length.
+   */
+  PASSWORD_TOO_LONG,
+  /**
+   * The password contains no letter although the policy requires one.
+   */
+  PASSWORD_MISSING_LETTER,
+  /**
+   * The password contains no digit although the policy requires one.
+   */
+  PASSWORD_MISSING_DIGIT;
+}
@@ -0,0 +1,100 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.LogLevel;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Refilling of the anonymous session pool.
+ *
+ * @author Firebase
+ *
+ */
+public class AnonymousSessionPoolTest {
+
+  private static final String TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJkIjp7InVpZCI6ImFub255bW91czoxIn19.signature";
+
+  @Test
+  public void refillFetchesTheShortfallOnce() {
+    CountingSource source = new CountingSource(false);
+    AnonymousSessionPool pool = source.pool(3);
+
+    assertNull(pool.take());
+    assertEquals(3, source.fetches.get());
+    // Fetches still in flight count towards the target
+    pool.refill();
+    assertEquals(3, source.fetches.get());
+  }
+
+  @Test
+  public void synchronousFailureEndsTheRefill() {
+    CountingSource source = new CountingSource(true);
+    AnonymousSessionPool pool = source.pool(3);
+
+    assertNull(pool.take());
+    assertEquals(1, source.fetches.get());
+    // The next refill tries again
+    pool.refill();
+    assertEquals(2, source.fetches.get());
+  }
+
+  @Test
+  public void addedSessionIsHandedOutAndReplaced() {
+    CountingSource source = new CountingSource(false);
+    AnonymousSessionPool pool = source.pool(1);
+    pool.refill();
+    assertEquals(1, source.fetches.get());
+
+    pool.add(TOKEN, new JSONObject());
+    AnonymousSessionPool.Session session = pool.take();
+    assertNotNull(session);
+    assertEquals(TOKEN, session.getToken());
+    assertEquals(2, source.fetches.get());
+  }
+
+  @Test
+  public void closedPoolStopsFetching() {
+    CountingSource source = new CountingSource(false);
+    AnonymousSessionPool pool = source.pool(2);
+    pool.refill();
+    assertEquals(2, source.fetches.get());
+
+    pool.close();
+    // A fetch that completes after close is dropped
+    pool.add(TOKEN, new JSONObject());
+    assertNull(pool.take());
+    pool.refill();
+    assertEquals(2, source.fetches.get());
+  }
+
+  private static final class CountingSource implements AnonymousSessionPool.Source {
+
+    final AtomicInteger fetches = new AtomicInteger();
+    private final boolean failImmediately;
+    private AnonymousSessionPool pool;
+
+    CountingSource(boolean failImmediately) {
+      this.failImmediately = failImmediately;
+    }
+
+    AnonymousSessionPool pool(int size) {
+      pool = new AnonymousSessionPool(size, this, new AsyncLogger(null, LogLevel.NONE));
+      return pool;
+    }
+
+    public void fetch() {
+      fetches.incrementAndGet();
+      if (failImmediately) {
+        // As when the SimpleLogin is closed, or a rate limited request fails on a direct callback executor
+        pool.fetchFailed();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,127 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.AuthEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Coalescing and de-duplication of auth state deliveries.
+ *
+ * @author Firebase
+ *
+ */
+public class AuthStatePublisherTest {
+
+  private static final long COALESCE_MILLIS = 100;
+
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private final FirebaseSimpleLoginUser user = new FirebaseSimpleLoginUser("1", "password:1", "token-1", "a@example.com", false);
+
+  @Test
+  public void loginLogoutBurstDeliversOnlyTheLatestState() throws InterruptedException {
+    AuthStatePublisher publisher = new AuthStatePublisher(COALESCE_MILLIS);
+    RecordingListener listener = new RecordingListener(1);
+    publisher.subscribe(listener, null);
+
+    publisher.publish(AuthEvent.LOGIN, user);
+    publisher.publish(AuthEvent.LOGOUT, null);
+
+    assertTrue(listener.await());
+    Thread.sleep(COALESCE_MILLIS * 2);
+    assertEquals(Collections.singletonList(AuthEvent.LOGOUT), listener.events());
+  }
+
+  @Test
+  public void flapBackToTheDeliveredStateDeliversNothing() throws InterruptedException {
+    AuthStatePublisher publisher = new AuthStatePublisher(COALESCE_MILLIS);
+    RecordingListener listener = new RecordingListener(1);
+    publisher.subscribe(listener, null);
+    publisher.publish(AuthEvent.LOGIN, user);
+    assertTrue(listener.await());
+
+    // A reconnect that logs out and back in with the same token within the window
+    publisher.publish(AuthEvent.LOGOUT, null);
+    publisher.publish(AuthEvent.LOGIN, user);
+    Thread.sleep(COALESCE_MILLIS * 3);
+
+    assertEquals(Collections.singletonList(AuthEvent.LOGIN), listener.events());
+  }
+
+  @Test
+  public void withoutCoalescingEveryChangeIsDelivered() {
+    AuthStatePublisher publisher = new AuthStatePublisher(0);
+    RecordingListener listener = new RecordingListener(0);
+    publisher.subscribe(listener, DIRECT_EXECUTOR);
+
+    publisher.publish(AuthEvent.LOGIN, user);
+    publisher.publish(AuthEvent.LOGOUT, null);
+    publisher.publish(AuthEvent.LOGOUT, null);
+
+    List<AuthEvent> expected = new ArrayList<AuthEvent>();
+    expected.add(AuthEvent.LOGIN);
+    expected.add(AuthEvent.LOGOUT);
+    assertEquals(expected, listener.events());
+  }
+
+  @Test
+  public void rejectedDeliveryDoesNotBlockLaterOnes() {
+    final AtomicBoolean reject = new AtomicBoolean(true);
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        if (reject.get()) {
+          throw new RejectedExecutionException();
+        }
+        command.run();
+      }
+    };
+    AuthStatePublisher publisher = new AuthStatePublisher(0);
+    RecordingListener listener = new RecordingListener(0);
+    publisher.subscribe(listener, executor);
+
+    publisher.publish(AuthEvent.LOGIN, user);
+    reject.set(false);
+    publisher.publish(AuthEvent.LOGOUT, null);
+
+    assertEquals(Collections.singletonList(AuthEvent.LOGOUT), listener.events());
+  }
+
+  private static final class RecordingListener implements SimpleLoginAuthStateListener {
+
+    private final List<AuthEvent> events = new ArrayList<AuthEvent>();
+    private final CountDownLatch delivered;
+
+    RecordingListener(int expected) {
+      this.delivered = new CountDownLatch(expected);
+    }
+
+    public synchronized void authStateChanged(AuthEvent event, FirebaseSimpleLoginUser user) {
+      events.add(event);
+      delivered.countDown();
+    }
+
+    synchronized List<AuthEvent> events() {
+      return new ArrayList<AuthEvent>(events);
+    }
+
+    boolean await() throws InterruptedException {
+      return delivered.await(5, TimeUnit.SECONDS);
+    }
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.firebase.simplelogin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Caching of session reads and writes, and invalidation by writes made through other instances.
+ *
+ * @author Firebase
+ *
+ */
+public class CachingSessionStoreTest {
+
+  @Test
+  public void ownWritesAreServedFromTheCache() {
+    CountingStore store = new CountingStore();
+    CachingSessionStore cache = new CachingSessionStore(store);
+
+    cache.put("session", "a");
+    assertEquals("a", cache.get("session"));
+    cache.remove("session");
+    assertNull(cache.get("session"));
+    assertEquals(0, store.reads);
+  }
+
+  @Test
+  public void writesThroughAnotherInstanceInvalidateTheCache() {
+    CountingStore store = new CountingStore();
+    CachingSessionStore local = new CachingSessionStore(store);
+    CachingSessionStore remote = new CachingSessionStore(store);
+
+    local.put("session", "a");
+    remote.put("session", "b");
+    assertEquals("b", local.get("session"));
+    assertEquals(1, store.reads);
+
+    remote.remove("session");
+    assertNull(local.get("session"));
+    assertEquals(2, store.reads);
+  }
+
+  @Test
+  public void absentValuesAreCached() {
+    CountingStore store = new CountingStore();
+    CachingSessionStore cache = new CachingSessionStore(store);
+
+    assertNull(cache.get("session"));
+    assertNull(cache.get("session"));
+    assertEquals(1, store.reads);
+  }
+
+  private static final class CountingStore extends InMemorySessionStore {
+
+    int reads;
+
+    @Override
+    public String get(String key) {
+      reads++;
+      return super.get(key);
+    }
+  }
+
+}
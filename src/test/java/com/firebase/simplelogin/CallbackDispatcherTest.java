@@ -0,0 +1,79 @@
+package com.firebase.simplelogin;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Batching of completion callbacks onto the callback executor.
+ *
+ * @author Firebase
+ *
+ */
+public class CallbackDispatcherTest {
+
+  @Test
+  public void callbacksQueuedBeforeTheDrainShareOneExecution() {
+    QueueingExecutor executor = new QueueingExecutor();
+    CallbackDispatcher dispatcher = new CallbackDispatcher(executor);
+    List<Integer> ran = new ArrayList<Integer>();
+    for (int i = 0; i < 3; i++) {
+      dispatcher.dispatch(recording(ran, i));
+    }
+
+    assertEquals(1, executor.tasks.size());
+    executor.runAll();
+    assertEquals(3, ran.size());
+  }
+
+  @Test
+  public void rejectedDrainRunsCallbacksInsteadOfDroppingThem() {
+    QueueingExecutor executor = new QueueingExecutor();
+    executor.rejecting = true;
+    CallbackDispatcher dispatcher = new CallbackDispatcher(executor);
+    List<Integer> ran = new ArrayList<Integer>();
+
+    dispatcher.dispatch(recording(ran, 1));
+    assertEquals(1, ran.size());
+
+    // Later callbacks go back to the executor once it accepts work again
+    executor.rejecting = false;
+    dispatcher.dispatch(recording(ran, 2));
+    assertEquals(1, ran.size());
+    executor.runAll();
+    assertEquals(2, ran.size());
+  }
+
+  private static Runnable recording(final List<Integer> ran, final int id) {
+    return new Runnable() {
+      public void run() {
+        ran.add(id);
+      }
+    };
+  }
+
+  private static final class QueueingExecutor implements Executor {
+
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    boolean rejecting;
+
+    public void execute(Runnable command) {
+      if (rejecting) {
+        throw new RejectedExecutionException();
+      }
+      tasks.add(command);
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        tasks.remove(0).run();
+      }
+    }
+  }
+
+}
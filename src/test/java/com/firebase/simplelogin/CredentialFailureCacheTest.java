@@ -0,0 +1,87 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Expiry and invalidation of remembered login failures. The cache is process-wide, so every test uses its own
+ * namespace.
+ *
+ * @author Firebase
+ *
+ */
+public class CredentialFailureCacheTest {
+
+  private static final FirebaseSimpleLoginError INVALID_PASSWORD = FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.InvalidPassword);
+  private static final FirebaseSimpleLoginError USER_DOES_NOT_EXIST = FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.UserDoesNotExist);
+
+  @Test
+  public void wrongPasswordIsRememberedForThatPasswordOnly() {
+    CredentialFailureCache cache = new CredentialFailureCache("wrong-password", 60 * 1000);
+    cache.recordFailure("a@example.com", "guess", INVALID_PASSWORD);
+
+    assertEquals(FirebaseSimpleLoginErrorCode.InvalidPassword, cache.lookup("a@example.com", "guess"));
+    assertNull(cache.lookup("a@example.com", "other"));
+    assertNull(cache.lookup("b@example.com", "guess"));
+  }
+
+  @Test
+  public void unknownEmailIsRememberedForAnyPassword() {
+    CredentialFailureCache cache = new CredentialFailureCache("unknown-email", 60 * 1000);
+    cache.recordFailure("nobody@example.com", "guess", USER_DOES_NOT_EXIST);
+
+    assertEquals(FirebaseSimpleLoginErrorCode.UserDoesNotExist, cache.lookup("nobody@example.com", "other"));
+  }
+
+  @Test
+  public void otherFailuresAreNotRemembered() {
+    CredentialFailureCache cache = new CredentialFailureCache("other-failures", 60 * 1000);
+    cache.recordFailure("a@example.com", "guess", FirebaseSimpleLoginError.errorFromCode(FirebaseSimpleLoginErrorCode.Unknown));
+    cache.recordFailure("a@example.com", "guess", null);
+
+    assertNull(cache.lookup("a@example.com", "guess"));
+  }
+
+  @Test
+  public void entriesExpireAfterTheirTtl() throws InterruptedException {
+    CredentialFailureCache cache = new CredentialFailureCache("ttl", 100);
+    cache.recordFailure("a@example.com", "guess", INVALID_PASSWORD);
+    cache.recordFailure("nobody@example.com", "guess", USER_DOES_NOT_EXIST);
+
+    Thread.sleep(150);
+    assertNull(cache.lookup("a@example.com", "guess"));
+    assertNull(cache.lookup("nobody@example.com", "guess"));
+  }
+
+  @Test
+  public void invalidateForgetsEveryFailureForTheEmail() {
+    CredentialFailureCache cache = new CredentialFailureCache("invalidate", 60 * 1000);
+    cache.recordFailure("a@example.com", "guess", INVALID_PASSWORD);
+    cache.recordFailure("a@example.com", "other", INVALID_PASSWORD);
+    cache.recordFailure("b@example.com", "guess", INVALID_PASSWORD);
+
+    cache.invalidate("a@example.com");
+    assertNull(cache.lookup("a@example.com", "guess"));
+    assertNull(cache.lookup("a@example.com", "other"));
+    assertEquals(FirebaseSimpleLoginErrorCode.InvalidPassword, cache.lookup("b@example.com", "guess"));
+  }
+
+  @Test
+  public void namespacesAreSeparate() {
+    new CredentialFailureCache("namespace-a", 60 * 1000).recordFailure("a@example.com", "guess", INVALID_PASSWORD);
+
+    assertNull(new CredentialFailureCache("namespace-b", 60 * 1000).lookup("a@example.com", "guess"));
+  }
+
+  @Test
+  public void disabledCacheRemembersNothing() {
+    CredentialFailureCache cache = new CredentialFailureCache("disabled", 0);
+    cache.recordFailure("a@example.com", "guess", INVALID_PASSWORD);
+
+    assertNull(cache.lookup("a@example.com", "guess"));
+  }
+
+}
@@ -0,0 +1,98 @@
+package com.firebase.simplelogin;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Latency ordering, ejection and re-admission of auth server endpoints.
+ *
+ * @author Firebase
+ *
+ */
+public class EndpointSelectorTest {
+
+  @Test
+  public void fastestEndpointIsTriedFirst() {
+    EndpointSelector selector = new EndpointSelector(Arrays.asList("a", "b", "c"));
+    selector.recordSuccess(endpoint(selector, "a"), 300);
+    selector.recordSuccess(endpoint(selector, "b"), 100);
+    selector.recordSuccess(endpoint(selector, "c"), 200);
+
+    assertEquals(Arrays.asList("b", "c", "a"), hosts(selector));
+  }
+
+  @Test
+  public void latencyIsSmoothedRatherThanReplaced() {
+    EndpointSelector selector = new EndpointSelector(Arrays.asList("a", "b"));
+    selector.recordSuccess(endpoint(selector, "a"), 100);
+    selector.recordSuccess(endpoint(selector, "b"), 150);
+    // One slow response only moves a's average to 0.2 * 300 + 0.8 * 100 = 140
+    selector.recordSuccess(endpoint(selector, "a"), 300);
+    assertEquals(Arrays.asList("a", "b"), hosts(selector));
+    // A second one moves it to 0.2 * 300 + 0.8 * 140 = 172
+    selector.recordSuccess(endpoint(selector, "a"), 300);
+    assertEquals(Arrays.asList("b", "a"), hosts(selector));
+  }
+
+  @Test
+  public void repeatedFailuresEjectAnEndpoint() {
+    EndpointSelector selector = new EndpointSelector(Arrays.asList("a", "b"));
+    selector.recordSuccess(endpoint(selector, "a"), 10);
+    selector.recordSuccess(endpoint(selector, "b"), 500);
+
+    selector.recordFailure(endpoint(selector, "a"));
+    selector.recordFailure(endpoint(selector, "a"));
+    assertEquals(Arrays.asList("a", "b"), hosts(selector));
+    selector.recordFailure(endpoint(selector, "a"));
+    // Ejected endpoints are still tried, but only after every healthy one
+    assertEquals(Arrays.asList("b", "a"), hosts(selector));
+  }
+
+  @Test
+  public void successReadmitsAnEjectedEndpoint() {
+    EndpointSelector selector = new EndpointSelector(Arrays.asList("a", "b"));
+    selector.recordSuccess(endpoint(selector, "b"), 500);
+    for (int i = 0; i < 3; i++) {
+      selector.recordFailure(endpoint(selector, "a"));
+    }
+    assertEquals(Arrays.asList("b", "a"), hosts(selector));
+
+    selector.recordSuccess(endpoint(selector, "a"), 10);
+    assertEquals(Arrays.asList("a", "b"), hosts(selector));
+    // The failure count starts over
+    selector.recordFailure(endpoint(selector, "a"));
+    assertEquals(Arrays.asList("a", "b"), hosts(selector));
+  }
+
+  @Test
+  public void aSingleEndpointIsNeverEjected() {
+    EndpointSelector selector = new EndpointSelector(Arrays.asList("a"));
+    for (int i = 0; i < 10; i++) {
+      selector.recordFailure(endpoint(selector, "a"));
+    }
+    assertEquals(Arrays.asList("a"), hosts(selector));
+  }
+
+  private static EndpointSelector.Endpoint endpoint(EndpointSelector selector, String host) {
+    for (EndpointSelector.Endpoint endpoint : selector.candidates()) {
+      if (endpoint.getHost().equals(host)) {
+        return endpoint;
+      }
+    }
+    throw new IllegalArgumentException(host);
+  }
+
+  private static List<String> hosts(EndpointSelector selector) {
+    List<String> hosts = new ArrayList<String>();
+    for (EndpointSelector.Endpoint endpoint : selector.candidates()) {
+      hosts.add(endpoint.getHost());
+    }
+    return hosts;
+  }
+
+}
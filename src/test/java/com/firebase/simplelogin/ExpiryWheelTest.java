@@ -0,0 +1,104 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.LogLevel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Running, cascading and cancelling of scheduled expiries. Each test drives its own wheel forward by hand.
+ *
+ * @author Firebase
+ *
+ */
+public class ExpiryWheelTest {
+
+  private static final AsyncLogger QUIET = new AsyncLogger(null, LogLevel.NONE);
+
+  private final ExpiryWheel wheel = new ExpiryWheel();
+  private final List<String> ran = new ArrayList<String>();
+  private final long now = System.currentTimeMillis();
+
+  @Test
+  public void runsTasksOnceTheirTickHasPassed() {
+    wheel.schedule(now + 5000, recording("soon"), QUIET);
+
+    wheel.advance(now + 3000);
+    assertTrue(ran.isEmpty());
+    wheel.advance(now + 6000);
+    assertEquals(1, ran.size());
+    wheel.advance(now + 10000);
+    assertEquals(1, ran.size());
+  }
+
+  @Test
+  public void cascadesFarEntriesDownToTheirTick() {
+    // One entry per outer wheel: about two minutes, two hours and two days away
+    long[] delays = new long[] { TimeUnit.MINUTES.toMillis(2), TimeUnit.HOURS.toMillis(2), TimeUnit.DAYS.toMillis(2) };
+    for (long delay : delays) {
+      wheel.schedule(now + delay, recording(String.valueOf(delay)), QUIET);
+    }
+
+    for (int i = 0; i < delays.length; i++) {
+      wheel.advance(now + delays[i] - 2 * ExpiryWheel.TICK_MILLIS);
+      assertEquals(i, ran.size());
+      wheel.advance(now + delays[i] + ExpiryWheel.TICK_MILLIS);
+      assertEquals(i + 1, ran.size());
+      assertEquals(String.valueOf(delays[i]), ran.get(i));
+    }
+  }
+
+  @Test
+  public void cancelledTasksDoNotRun() {
+    ExpiryWheel.Timeout near = wheel.schedule(now + 5000, recording("near"), QUIET);
+    ExpiryWheel.Timeout far = wheel.schedule(now + TimeUnit.HOURS.toMillis(2), recording("far"), QUIET);
+    wheel.schedule(now + 6000, recording("kept"), QUIET);
+
+    near.cancel();
+    far.cancel();
+    // Cancelling twice is harmless
+    far.cancel();
+    wheel.advance(now + TimeUnit.HOURS.toMillis(3));
+
+    assertEquals(1, ran.size());
+    assertEquals("kept", ran.get(0));
+  }
+
+  @Test
+  public void failingTaskIsLoggedAndDoesNotStopTheBatch() throws InterruptedException {
+    final CountDownLatch logged = new CountDownLatch(1);
+    AsyncLogger log = new AsyncLogger(new SimpleLoginLogger() {
+      public void log(LogLevel level, String message, Throwable throwable) {
+        if (level == LogLevel.ERROR && throwable instanceof IllegalStateException) {
+          logged.countDown();
+        }
+      }
+    }, LogLevel.ERROR);
+    wheel.schedule(now + 2000, new Runnable() {
+      public void run() {
+        throw new IllegalStateException();
+      }
+    }, log);
+    wheel.schedule(now + 2000, recording("after"), QUIET);
+
+    wheel.advance(now + 3000);
+
+    assertEquals(1, ran.size());
+    assertTrue(logged.await(5, TimeUnit.SECONDS));
+  }
+
+  private Runnable recording(final String name) {
+    return new Runnable() {
+      public void run() {
+        ran.add(name);
+      }
+    };
+  }
+
+}
@@ -0,0 +1,178 @@
+package com.firebase.simplelogin;
+
+import com.firebase.client.Firebase;
+import com.firebase.client.Firebase.AuthListener;
+import com.firebase.simplelogin.enums.FirebaseSimpleLoginErrorCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Acquire, release, re-authentication and eviction of pooled connections.
+ *
+ * @author Firebase
+ *
+ */
+public class FirebaseConnectionPoolTest {
+
+  private Queue<AuthListener> pendingAuth;
+  private RecordingFactory factory;
+  private FirebaseConnectionPool pool;
+
+  @Before
+  public void setUp() {
+    pendingAuth = new ConcurrentLinkedQueue<AuthListener>();
+    factory = new RecordingFactory();
+    pool = new FirebaseConnectionPool(factory, 1, 1, TimeUnit.HOURS);
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  @Test
+  public void sameTokenReusesTheAuthenticatedConnection() {
+    RecordingHandler first = new RecordingHandler();
+    pool.acquire("alice", "token-a", first);
+    assertNull(first.ref);
+    pendingAuth.poll().onAuthSuccess(null);
+    assertNotNull(first.ref);
+
+    RecordingHandler second = new RecordingHandler();
+    pool.acquire("alice", "token-a", second);
+    assertSame(first.ref, second.ref);
+    assertEquals(1, factory.created.size());
+    assertNull(pendingAuth.poll());
+  }
+
+  @Test
+  public void newTokenReauthenticatesTheSameConnection() {
+    RecordingHandler first = new RecordingHandler();
+    pool.acquire("alice", "token-a", first);
+    pendingAuth.poll().onAuthSuccess(null);
+    pool.release(first.ref);
+
+    RecordingHandler second = new RecordingHandler();
+    pool.acquire("alice", "token-a2", second);
+    assertNull(second.ref);
+    pendingAuth.poll().onAuthSuccess(null);
+    assertSame(first.ref, second.ref);
+    assertEquals(1, factory.created.size());
+  }
+
+  @Test
+  public void leasedConnectionsAreNotEvicted() {
+    RecordingHandler alice = new RecordingHandler();
+    pool.acquire("alice", "token-a", alice);
+    pendingAuth.poll().onAuthSuccess(null);
+
+    RecordingHandler bob = new RecordingHandler();
+    pool.acquire("bob", "token-b", bob);
+    assertEquals(FirebaseSimpleLoginErrorCode.PoolExhausted, bob.error.getCode());
+
+    pool.release(alice.ref);
+    bob = new RecordingHandler();
+    pool.acquire("bob", "token-b", bob);
+    pendingAuth.poll().onAuthSuccess(null);
+    assertNotNull(bob.ref);
+    assertTrue(factory.discarded.contains(alice.ref));
+  }
+
+  @Test
+  public void failedAuthenticationDropsTheConnection() {
+    RecordingHandler handler = new RecordingHandler();
+    pool.acquire("alice", "token-a", handler);
+    pendingAuth.poll().onAuthError(null);
+
+    assertNotNull(handler.error);
+    assertEquals(factory.created, factory.discarded);
+  }
+
+  @Test
+  public void rootFromALostCreationRaceIsDiscarded() {
+    factory.onFirstCreate = new Runnable() {
+      public void run() {
+        // Another caller gets the same user's connection in while the first one is still creating its root
+        pool.acquire("alice", "token-a", new RecordingHandler());
+      }
+    };
+    pool.acquire("alice", "token-a", new RecordingHandler());
+
+    assertEquals(2, factory.created.size());
+    assertEquals(1, factory.discarded.size());
+    assertSame(factory.created.get(0), factory.discarded.get(0));
+    // Only the winner is authenticated, and both callers wait on it
+    assertNotNull(pendingAuth.poll());
+    assertNull(pendingAuth.poll());
+  }
+
+  @Test
+  public void missingArgumentsAreRejected() {
+    try {
+      pool.acquire("alice", null, new RecordingHandler());
+      fail();
+    }
+    catch (IllegalArgumentException expected) {
+    }
+    try {
+      pool.acquire(null, "token-a", new RecordingHandler());
+      fail();
+    }
+    catch (IllegalArgumentException expected) {
+    }
+    try {
+      pool.acquire((FirebaseSimpleLoginUser) null, new RecordingHandler());
+      fail();
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private final class RecordingFactory implements FirebaseConnectionPool.ConnectionFactory {
+
+    final List<Firebase> created = new ArrayList<Firebase>();
+    final List<Firebase> discarded = new ArrayList<Firebase>();
+    Runnable onFirstCreate;
+
+    public Firebase create(String uid) {
+      Firebase ref = SessionOrderingTest.mockRef(pendingAuth);
+      created.add(ref);
+      if (onFirstCreate != null) {
+        Runnable task = onFirstCreate;
+        onFirstCreate = null;
+        task.run();
+      }
+      return ref;
+    }
+
+    public void discard(Firebase ref) {
+      discarded.add(ref);
+    }
+  }
+
+  private static final class RecordingHandler implements FirebaseConnectionPool.ConnectionHandler {
+
+    FirebaseSimpleLoginError error;
+    Firebase ref;
+
+    public void connected(FirebaseSimpleLoginError error, Firebase ref) {
+      this.error = error;
+      this.ref = ref;
+    }
+  }
+
+}
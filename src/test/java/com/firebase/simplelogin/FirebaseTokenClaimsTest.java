@@ -0,0 +1,57 @@
+package com.firebase.simplelogin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decoding of token claims and the local notion of when a session ends.
+ *
+ * @author Firebase
+ *
+ */
+public class FirebaseTokenClaimsTest {
+
+  // iat 2014-05-13, no exp
+  private static final String ISSUED_ONLY = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJpYXQiOjE0MDAwMDAwMDAsImQiOnsidWlkIjoiY3VzdG9tOm9sZCJ9fQ.signature";
+  // iat 2014-05-13, exp one hour later
+  private static final String WITH_EXPIRY = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJpYXQiOjE0MDAwMDAwMDAsImV4cCI6MTQwMDAwMzYwMCwiZCI6eyJ1aWQiOiJjdXN0b206ZXhwIn19.signature";
+
+  @Test
+  public void decodesIssuedAtExpiryAndUid() {
+    FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(WITH_EXPIRY);
+    assertNotNull(claims);
+    assertEquals(1400000000000L, claims.getIssuedAt());
+    assertEquals(1400003600000L, claims.getExpiresAt());
+    assertEquals("custom:exp", claims.getUid());
+  }
+
+  @Test
+  public void sessionWithoutExplicitExpiryIsLeftToFirebase() {
+    FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(ISSUED_ONLY);
+    // Issued years ago, but the session length is a dashboard setting the client cannot see
+    assertEquals(0, claims.getSessionEndsAt());
+    assertFalse(claims.isExpired(System.currentTimeMillis()));
+  }
+
+  @Test
+  public void explicitExpiryAllowsForClockSkew() {
+    FirebaseTokenClaims claims = FirebaseTokenClaims.fromToken(WITH_EXPIRY);
+    long expiresAt = claims.getExpiresAt();
+    assertTrue(claims.getSessionEndsAt() > expiresAt);
+    assertFalse(claims.isExpired(expiresAt));
+    assertTrue(claims.isExpired(claims.getSessionEndsAt() + 1));
+  }
+
+  @Test
+  public void malformedTokensHaveNoClaims() {
+    assertNull(FirebaseTokenClaims.fromToken(null));
+    assertNull(FirebaseTokenClaims.fromToken("not-a-token"));
+    assertNull(FirebaseTokenClaims.fromToken("a.!!!.c"));
+  }
+
+}
@@ -0,0 +1,137 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.ValidationRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local email and password checks, including host name validation and the blocked domain bloom filter.
+ *
+ * @author Firebase
+ *
+ */
+public class PreflightValidatorTest {
+
+  private final PreflightValidator strict = PreflightValidator.compile(new SimpleLoginValidationPolicy()
+      .setBlockedDomains(Arrays.asList("mailinator.com", "Throwaway.Example")));
+
+  @Test
+  public void withoutAPolicyOnlyTheHistoricalChecksApply() {
+    PreflightValidator lenient = PreflightValidator.compile(null);
+    assertNull(lenient.checkEmail("a@b"));
+    assertEquals(ValidationRule.EMAIL_SYNTAX, lenient.checkEmail("@example.com"));
+    assertEquals(ValidationRule.EMAIL_REQUIRED, lenient.checkEmail(" "));
+    assertEquals(ValidationRule.PASSWORD_REQUIRED, lenient.checkPassword("\t"));
+    assertNull(lenient.checkNewPassword("x"));
+  }
+
+  @Test
+  public void acceptsOrdinaryAddresses() {
+    assertNull(strict.checkEmail("jane.doe+tag@example.com"));
+    assertNull(strict.checkEmail("j@mail.example.co.uk"));
+    assertNull(strict.checkEmail("x@123.example.com"));
+  }
+
+  @Test
+  public void rejectsMalformedLocalParts() {
+    assertEquals(ValidationRule.EMAIL_SYNTAX, strict.checkEmail("no-at-sign"));
+    assertEquals(ValidationRule.EMAIL_SYNTAX, strict.checkEmail(".jane@example.com"));
+    assertEquals(ValidationRule.EMAIL_SYNTAX, strict.checkEmail("jane.@example.com"));
+    assertEquals(ValidationRule.EMAIL_SYNTAX, strict.checkEmail("ja..ne@example.com"));
+    assertEquals(ValidationRule.EMAIL_SYNTAX, strict.checkEmail("ja ne@example.com"));
+    assertEquals(ValidationRule.EMAIL_SYNTAX, strict.checkEmail("jane@"));
+  }
+
+  @Test
+  public void validatesHostNames() {
+    assertEquals(ValidationRule.EMAIL_DOMAIN, strict.checkEmail("jane@localhost"));
+    assertEquals(ValidationRule.EMAIL_DOMAIN, strict.checkEmail("jane@example..com"));
+    assertEquals(ValidationRule.EMAIL_DOMAIN, strict.checkEmail("jane@-example.com"));
+    assertEquals(ValidationRule.EMAIL_DOMAIN, strict.checkEmail("jane@example-.com"));
+    assertEquals(ValidationRule.EMAIL_DOMAIN, strict.checkEmail("jane@exa_mple.com"));
+    assertEquals(ValidationRule.EMAIL_DOMAIN, strict.checkEmail("jane@10.0.0.1"));
+    assertEquals(ValidationRule.EMAIL_DOMAIN, strict.checkEmail("jane@" + repeat('a', 64) + ".com"));
+    assertNull(strict.checkEmail("jane@" + repeat('a', 63) + ".com"));
+  }
+
+  @Test
+  public void acceptsInternationalDomainsUnlessDisabled() {
+    String email = "jane@b\u00fccher.example\u3002com";
+    assertNull(strict.checkEmail(email));
+    PreflightValidator asciiOnly = PreflightValidator.compile(new SimpleLoginValidationPolicy().setInternationalEmails(false));
+    assertEquals(ValidationRule.EMAIL_DOMAIN, asciiOnly.checkEmail(email));
+  }
+
+  @Test
+  public void blocksListedDomainsAndTheirSubdomains() {
+    assertEquals(ValidationRule.EMAIL_BLOCKED_DOMAIN, strict.checkEmail("jane@mailinator.com"));
+    assertEquals(ValidationRule.EMAIL_BLOCKED_DOMAIN, strict.checkEmail("jane@MAILINATOR.com"));
+    assertEquals(ValidationRule.EMAIL_BLOCKED_DOMAIN, strict.checkEmail("jane@eu.mailinator.com"));
+    assertEquals(ValidationRule.EMAIL_BLOCKED_DOMAIN, strict.checkEmail("jane@throwaway.example"));
+    assertEquals(ValidationRule.EMAIL_BLOCKED_DOMAIN, strict.checkEmail("jane@throwaway\uff0eexample"));
+    // Lookalikes and unrelated domains are not blocked
+    assertNull(strict.checkEmail("jane@not-mailinator.com"));
+    assertNull(strict.checkEmail("jane@example.com"));
+  }
+
+  @Test
+  public void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+    List<String> blocked = new ArrayList<String>();
+    for (int i = 0; i < 1000; i++) {
+      blocked.add("blocked" + i + ".example");
+    }
+    DomainBloomFilter filter = DomainBloomFilter.build(blocked, 0.01);
+    for (String domain : blocked) {
+      assertTrue(domain, filter.mightContainDomainOrParent(domain, 0, domain.length()));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      String domain = "allowed" + i + ".example";
+      if (filter.mightContainDomainOrParent(domain, 0, domain.length())) {
+        falsePositives++;
+      }
+    }
+    // 1% expected; allow generous slack for the hash
+    assertTrue("false positives: " + falsePositives, falsePositives < 300);
+  }
+
+  @Test
+  public void emptyBlocklistBuildsNoFilter() {
+    assertNull(DomainBloomFilter.build(null, 0.01));
+    assertNull(DomainBloomFilter.build(new ArrayList<String>(), 0.01));
+    DomainBloomFilter filter = DomainBloomFilter.build(Arrays.asList("example.com"), 0.01);
+    // The top level label alone is never looked up
+    assertFalse(filter.mightContainDomainOrParent("com", 0, 3));
+  }
+
+  @Test
+  public void newPasswordsFollowThePolicy() {
+    PreflightValidator validator = PreflightValidator.compile(new SimpleLoginValidationPolicy()
+        .setPasswordLength(8, 12)
+        .setPasswordCharacterClasses(true, true));
+    assertEquals(ValidationRule.PASSWORD_TOO_SHORT, validator.checkNewPassword("abc123"));
+    assertEquals(ValidationRule.PASSWORD_TOO_LONG, validator.checkNewPassword("abcdef1234567"));
+    assertEquals(ValidationRule.PASSWORD_MISSING_DIGIT, validator.checkNewPassword("abcdefgh"));
+    assertEquals(ValidationRule.PASSWORD_MISSING_LETTER, validator.checkNewPassword("12345678"));
+    assertNull(validator.checkNewPassword("abcd1234"));
+    // Existing passwords are only checked for being present
+    assertNull(validator.checkPassword("abc"));
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder builder = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.firebase.simplelogin;
+
+import com.firebase.simplelogin.enums.Provider;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Token bucket refill and isolation. Buckets are process-wide, so every test uses its own namespace.
+ *
+ * @author Firebase
+ *
+ */
+public class RateLimiterTest {
+
+  private static final String PATH = "/auth/firebase";
+
+  @Test
+  public void burstIsServedImmediatelyThenDelayed() {
+    RateLimiter limiter = new RateLimiter("burst", 2, 2, 5000);
+    assertEquals(0, limiter.reserve(PATH, Provider.PASSWORD));
+    assertEquals(0, limiter.reserve(PATH, Provider.PASSWORD));
+    long wait = limiter.reserve(PATH, Provider.PASSWORD);
+    assertTrue("waited " + wait, wait > 0 && wait <= 500);
+    // Waiting requests queue up behind each other
+    long next = limiter.reserve(PATH, Provider.PASSWORD);
+    assertTrue("waited " + next, next > wait && next <= 1000);
+  }
+
+  @Test
+  public void bucketRefillsOverTimeUpToItsBurst() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter("refill", 10, 1, 1000);
+    assertEquals(0, limiter.reserve(PATH, Provider.PASSWORD));
+    Thread.sleep(300);
+    // Three permits' worth of time has passed, but the bucket only holds one
+    assertEquals(0, limiter.reserve(PATH, Provider.PASSWORD));
+    assertTrue(limiter.reserve(PATH, Provider.PASSWORD) > 0);
+  }
+
+  @Test
+  public void rejectsWhenTheWaitWouldExceedTheMaximum() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter("reject", 10, 1, 0);
+    assertEquals(0, limiter.reserve(PATH, Provider.PASSWORD));
+    assertEquals(RateLimiter.REJECTED, limiter.reserve(PATH, Provider.PASSWORD));
+    assertFalse(limiter.acquire(PATH, Provider.PASSWORD));
+    // Rejected requests do not use up permits
+    Thread.sleep(120);
+    assertEquals(0, limiter.reserve(PATH, Provider.PASSWORD));
+  }
+
+  @Test
+  public void namespacesEndpointsAndProvidersHaveSeparateBuckets() {
+    RateLimiter limiter = new RateLimiter("isolated-a", 1, 1, 0);
+    assertEquals(0, limiter.reserve(PATH, Provider.PASSWORD));
+    assertEquals(RateLimiter.REJECTED, limiter.reserve(PATH, Provider.PASSWORD));
+
+    assertEquals(0, new RateLimiter("isolated-b", 1, 1, 0).reserve(PATH, Provider.PASSWORD));
+    assertEquals(0, limiter.reserve("/auth/anonymous", Provider.PASSWORD));
+    assertEquals(0, limiter.reserve(PATH, Provider.ANONYMOUS));
+    // Same namespace, different limits
+    assertEquals(0, new RateLimiter("isolated-a", 1, 2, 0).reserve(PATH, Provider.PASSWORD));
+    // Same namespace and limits share the bucket
+    assertEquals(RateLimiter.REJECTED, new RateLimiter("isolated-a", 1, 1, 0).reserve(PATH, Provider.PASSWORD));
+  }
+
+  @Test
+  public void disabledLimiterNeverWaits() {
+    RateLimiter limiter = new RateLimiter("disabled", 0, 1, 0);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(0, limiter.reserve(PATH, Provider.PASSWORD));
+    }
+    assertTrue(limiter.acquire(PATH, Provider.PASSWORD));
+  }
+
+}
@@ -0,0 +1,384 @@
+package com.firebase.simplelogin;
+
+import com.firebase.client.DataSnapshot;
+import com.firebase.client.Firebase;
+import com.firebase.client.Firebase.AuthListener;
+import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
+import com.firebase.simplelogin.enums.AuthEvent;
+import com.firebase.simplelogin.enums.LogLevel;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ordering of logout(), checkAuthStatus() and the auth state watcher against a login whose Firebase.auth() call is
+ * still in flight. Every login and logout takes a new session generation under sessionLock, so whichever starts last
+ * owns the saved session and the published state.
+ *
+ * @author Firebase
+ *
+ */
+public class SessionOrderingTest {
+
+  // Unsigned custom tokens with d.uid = "custom:N" and no expiry; custom login makes no auth server request. Tests
+  // that get a token rejected use their own, since rejections are remembered process-wide.
+  private static final String TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJkIjp7InVpZCI6ImN1c3RvbToxIn19.signature";
+  private static final String OTHER_TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJkIjp7InVpZCI6ImN1c3RvbToyIn19.signature";
+  private static final String REJECTED_TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJkIjp7InVpZCI6ImN1c3RvbTozIn19.signature";
+  private static final String SUPERSEDED_TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJkIjp7InVpZCI6ImN1c3RvbTo0In19.signature";
+  private static final String SESSION_KEY = "jsonTokenData";
+  private static final int RACE_ITERATIONS = 2000;
+
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private Firebase ref;
+  private Queue<AuthListener> pendingAuth;
+  private Queue<ValueEventListener> watchers;
+  private InMemorySessionStore sessionStore;
+  private RecordingListener authState;
+  private SimpleLogin simpleLogin;
+
+  @Before
+  public void setUp() {
+    pendingAuth = new ConcurrentLinkedQueue<AuthListener>();
+    watchers = new ConcurrentLinkedQueue<ValueEventListener>();
+    ref = mockRef(pendingAuth, watchers);
+    sessionStore = new InMemorySessionStore();
+    authState = new RecordingListener();
+    simpleLogin = newSimpleLogin(ref, sessionStore, authState, false);
+  }
+
+  @After
+  public void tearDown() {
+    simpleLogin.close();
+  }
+
+  @Test
+  public void logoutSupersedesLoginInFlight() {
+    RecordingHandler handler = new RecordingHandler();
+    simpleLogin.loginWithCustomToken(TOKEN, handler);
+    AuthListener listener = pendingAuth.poll();
+    assertNotNull(listener);
+
+    simpleLogin.logout();
+    listener.onAuthSuccess(null);
+
+    // The caller still learns its auth call succeeded, but the logout owns the session
+    assertNull(handler.error);
+    assertNotNull(handler.user);
+    assertNull(sessionStore.get(SESSION_KEY));
+    assertEquals(AuthEvent.LOGOUT, authState.lastEvent.get());
+  }
+
+  @Test
+  public void loginStartedAfterLogoutIsSaved() {
+    simpleLogin.logout();
+    RecordingHandler handler = new RecordingHandler();
+    simpleLogin.loginWithCustomToken(TOKEN, handler);
+    pendingAuth.poll().onAuthSuccess(null);
+
+    assertNull(handler.error);
+    assertNotNull(handler.user);
+    assertNotNull(sessionStore.get(SESSION_KEY));
+    assertEquals(AuthEvent.LOGIN, authState.lastEvent.get());
+  }
+
+  @Test
+  public void logoutDuringRestoreWins() throws JSONException {
+    SimpleLogin restoring = newSimpleLoginWithSavedSession(TOKEN, "custom:1", false);
+    RecordingHandler restore = new RecordingHandler();
+    restoring.checkAuthStatus(restore);
+    AuthListener validation = pendingAuth.poll();
+
+    restoring.logout();
+    validation.onAuthSuccess(null);
+
+    assertNull(sessionStore.get(SESSION_KEY));
+    assertEquals(AuthEvent.LOGOUT, authState.lastEvent.get());
+    assertNull(watchers.poll());
+    restoring.close();
+  }
+
+  @Test
+  public void loginStartedDuringRestoreOwnsTheSession() throws JSONException {
+    SimpleLogin restoring = newSimpleLoginWithSavedSession(TOKEN, "custom:1", false);
+    RecordingHandler restore = new RecordingHandler();
+    restoring.checkAuthStatus(restore);
+    AuthListener validation = pendingAuth.poll();
+
+    RecordingHandler login = new RecordingHandler();
+    restoring.loginWithCustomToken(OTHER_TOKEN, login);
+    pendingAuth.poll().onAuthSuccess(null);
+    // The restore answers last, but started first
+    validation.onAuthSuccess(null);
+
+    assertNull(restore.error);
+    assertEquals(OTHER_TOKEN, savedToken());
+    assertEquals(OTHER_TOKEN, authState.lastUser.get().getAuthToken());
+    restoring.close();
+  }
+
+  @Test
+  public void loginSupersededByLogoutDoesNotWatchAuthState() {
+    simpleLogin.loginWithCustomToken(TOKEN, new RecordingHandler());
+    AuthListener listener = pendingAuth.poll();
+
+    simpleLogin.logout();
+    listener.onAuthSuccess(null);
+
+    assertNull(watchers.poll());
+  }
+
+  @Test
+  public void unauthReportedByFirebaseLogsOut() {
+    simpleLogin.loginWithCustomToken(TOKEN, new RecordingHandler());
+    pendingAuth.poll().onAuthSuccess(null);
+    ValueEventListener watcher = watchers.poll();
+    assertNotNull(watcher);
+
+    watcher.onDataChange(authenticated(false));
+
+    assertNull(sessionStore.get(SESSION_KEY));
+    assertEquals(AuthEvent.LOGOUT, authState.lastEvent.get());
+  }
+
+  @Test
+  public void unauthDoesNotCancelNewerLoginInFlight() throws JSONException {
+    simpleLogin.loginWithCustomToken(TOKEN, new RecordingHandler());
+    pendingAuth.poll().onAuthSuccess(null);
+    ValueEventListener watcher = watchers.poll();
+
+    RecordingHandler login = new RecordingHandler();
+    simpleLogin.loginWithCustomToken(OTHER_TOKEN, login);
+    // Firebase drops the old credentials while it switches to the new token
+    watcher.onDataChange(authenticated(false));
+    pendingAuth.poll().onAuthSuccess(null);
+
+    assertNull(login.error);
+    assertEquals(OTHER_TOKEN, savedToken());
+    assertEquals(AuthEvent.LOGIN, authState.lastEvent.get());
+  }
+
+  @Test
+  public void optimisticRestoreSurvivesTransientFailure() throws JSONException {
+    SimpleLogin restoring = newOptimisticSimpleLogin(TOKEN, "custom:1");
+    RecordingHandler handler = new RecordingHandler();
+    restoring.checkAuthStatus(handler);
+    assertNotNull(handler.user);
+
+    pendingAuth.poll().onAuthError(new FirebaseError(FirebaseError.DISCONNECTED, "offline"));
+
+    assertNotNull(sessionStore.get(SESSION_KEY));
+    assertEquals(AuthEvent.LOGIN, authState.lastEvent.get());
+    restoring.close();
+  }
+
+  @Test
+  public void optimisticRestoreRevokedOnInvalidToken() throws JSONException {
+    SimpleLogin restoring = newOptimisticSimpleLogin(REJECTED_TOKEN, "custom:3");
+    restoring.checkAuthStatus(new RecordingHandler());
+
+    pendingAuth.poll().onAuthError(new FirebaseError(FirebaseError.INVALID_TOKEN, "invalid"));
+
+    assertNull(sessionStore.get(SESSION_KEY));
+    assertEquals(AuthEvent.REVOKED, authState.lastEvent.get());
+    restoring.close();
+  }
+
+  @Test
+  public void loginDuringOptimisticRestoreWinsOverItsRejection() throws JSONException {
+    SimpleLogin restoring = newOptimisticSimpleLogin(SUPERSEDED_TOKEN, "custom:4");
+    restoring.checkAuthStatus(new RecordingHandler());
+    AuthListener validation = pendingAuth.poll();
+
+    RecordingHandler login = new RecordingHandler();
+    restoring.loginWithCustomToken(OTHER_TOKEN, login);
+    AuthListener newLogin = pendingAuth.poll();
+    validation.onAuthError(new FirebaseError(FirebaseError.INVALID_TOKEN, "invalid"));
+    newLogin.onAuthSuccess(null);
+
+    assertNull(login.error);
+    assertEquals(OTHER_TOKEN, savedToken());
+    assertEquals(AuthEvent.LOGIN, authState.lastEvent.get());
+    assertEquals(OTHER_TOKEN, authState.lastUser.get().getAuthToken());
+    restoring.close();
+  }
+
+  @Test
+  public void logoutRacingAuthSuccessAlwaysWins() throws InterruptedException {
+    for (int i = 0; i < RACE_ITERATIONS; i++) {
+      Queue<AuthListener> auth = new ConcurrentLinkedQueue<AuthListener>();
+      InMemorySessionStore store = new InMemorySessionStore();
+      RecordingListener listener = new RecordingListener();
+      final SimpleLogin login = newSimpleLogin(mockRef(auth), store, listener, false);
+      try {
+        login.loginWithCustomToken(TOKEN, new RecordingHandler());
+        final AuthListener inFlight = auth.poll();
+        race(new Runnable() {
+          public void run() {
+            inFlight.onAuthSuccess(null);
+          }
+        }, new Runnable() {
+          public void run() {
+            login.logout();
+          }
+        });
+
+        // Logout started after the login, so it must win however the two interleave
+        assertNull("iteration " + i, store.get(SESSION_KEY));
+        assertEquals("iteration " + i, AuthEvent.LOGOUT, listener.lastEvent.get());
+      }
+      finally {
+        login.close();
+      }
+    }
+  }
+
+  private SimpleLogin newOptimisticSimpleLogin(String token, String uid) throws JSONException {
+    return newSimpleLoginWithSavedSession(token, uid, true);
+  }
+
+  private SimpleLogin newSimpleLoginWithSavedSession(String token, String uid, boolean optimisticRestore) throws JSONException {
+    JSONObject userData = new JSONObject();
+    userData.put("id", uid);
+    userData.put("uid", uid);
+    userData.put("provider", "custom");
+    JSONObject saved = new JSONObject();
+    saved.put("token", token);
+    saved.put("userData", userData);
+    sessionStore.put(SESSION_KEY, saved.toString());
+    return newSimpleLogin(ref, sessionStore, authState, optimisticRestore);
+  }
+
+  private static DataSnapshot authenticated(boolean authenticated) {
+    DataSnapshot snapshot = mock(DataSnapshot.class);
+    when(snapshot.getValue()).thenReturn(Boolean.valueOf(authenticated));
+    return snapshot;
+  }
+
+  private String savedToken() throws JSONException {
+    String saved = sessionStore.get(SESSION_KEY);
+    return saved != null ? new JSONObject(saved).getString("token") : null;
+  }
+
+  /**
+   * Run both tasks on their own threads, released at the same moment, and wait for them to finish.
+   */
+  static void race(Runnable first, Runnable second) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[] { new Thread(released(start, first)), new Thread(released(start, second)) };
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  private static Runnable released(final CountDownLatch start, final Runnable task) {
+    return new Runnable() {
+      public void run() {
+        try {
+          start.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        task.run();
+      }
+    };
+  }
+
+  static SimpleLogin newSimpleLogin(Firebase ref, SimpleLoginSessionStore store, SimpleLoginAuthStateListener listener, boolean optimisticRestore) {
+    SimpleLoginOptions options = new SimpleLoginOptions()
+        .setSessionStore(store)
+        .setSessionKey(SESSION_KEY)
+        .setOptimisticRestore(optimisticRestore)
+        .setCallbackExecutor(DIRECT_EXECUTOR)
+        .setAuthEventCoalesceMillis(0)
+        .setLogLevel(LogLevel.NONE);
+    SimpleLogin simpleLogin = new SimpleLogin(ref, null, options);
+    simpleLogin.addAuthStateListener(listener, DIRECT_EXECUTOR);
+    return simpleLogin;
+  }
+
+  /**
+   * @return A Firebase reference whose auth() calls stay in flight until the test completes the queued listener.
+   */
+  static Firebase mockRef(final Queue<AuthListener> pendingAuth) {
+    return mockRef(pendingAuth, new ConcurrentLinkedQueue<ValueEventListener>());
+  }
+
+  /**
+   * @return A Firebase reference that also queues the auth state watcher's listener when it is attached.
+   */
+  static Firebase mockRef(final Queue<AuthListener> pendingAuth, final Queue<ValueEventListener> watchers) {
+    Firebase ref = mock(Firebase.class);
+    when(ref.toString()).thenReturn("https://simplelogin-test.firebaseio.com");
+    when(ref.getRoot()).thenReturn(ref);
+    when(ref.child(anyString())).thenReturn(ref);
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        pendingAuth.add((AuthListener) invocation.getArguments()[1]);
+        return null;
+      }
+    }).when(ref).auth(anyString(), any(AuthListener.class));
+    doAnswer(new Answer<ValueEventListener>() {
+      public ValueEventListener answer(InvocationOnMock invocation) {
+        ValueEventListener listener = (ValueEventListener) invocation.getArguments()[0];
+        watchers.add(listener);
+        return listener;
+      }
+    }).when(ref).addValueEventListener(any(ValueEventListener.class));
+    return ref;
+  }
+
+  static final class RecordingListener implements SimpleLoginAuthStateListener {
+
+    final AtomicReference<AuthEvent> lastEvent = new AtomicReference<AuthEvent>();
+    final AtomicReference<FirebaseSimpleLoginUser> lastUser = new AtomicReference<FirebaseSimpleLoginUser>();
+
+    public void authStateChanged(AuthEvent event, FirebaseSimpleLoginUser user) {
+      lastUser.set(user);
+      lastEvent.set(event);
+    }
+  }
+
+  static final class RecordingHandler implements SimpleLoginAuthenticatedHandler {
+
+    volatile FirebaseSimpleLoginError error;
+    volatile FirebaseSimpleLoginUser user;
+
+    public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
+      this.error = error;
+      this.user = user;
+    }
+  }
+
+}
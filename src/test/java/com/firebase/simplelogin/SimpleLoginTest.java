@@ -0,0 +1,57 @@
+package com.firebase.simplelogin;
+
+import com.firebase.client.Firebase;
+import com.firebase.client.Firebase.AuthListener;
+import com.firebase.simplelogin.enums.AuthEvent;
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Construction and lifecycle of SimpleLogin.
+ *
+ * @author Firebase
+ *
+ */
+public class SimpleLoginTest {
+
+  // Custom token issued in 2014 with no exp; only Firebase knows when its session ends
+  private static final String LONG_LIVED_TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJpYXQiOjE0MDAwMDAwMDAsImQiOnsidWlkIjoiY3VzdG9tOm9sZCJ9fQ.signature";
+
+  @Test
+  public void nullOptionsFallBackToDefaults() {
+    SimpleLogin simpleLogin = new SimpleLogin(SessionOrderingTest.mockRef(new ConcurrentLinkedQueue<AuthListener>()), null, null);
+    simpleLogin.close();
+  }
+
+  @Test
+  public void tokenWithoutExpiryIsAcceptedAndRestoredAlike() {
+    Queue<AuthListener> pendingAuth = new ConcurrentLinkedQueue<AuthListener>();
+    Firebase ref = SessionOrderingTest.mockRef(pendingAuth);
+    InMemorySessionStore store = new InMemorySessionStore();
+    SessionOrderingTest.RecordingListener authState = new SessionOrderingTest.RecordingListener();
+
+    SimpleLogin first = SessionOrderingTest.newSimpleLogin(ref, store, authState, false);
+    SessionOrderingTest.RecordingHandler login = new SessionOrderingTest.RecordingHandler();
+    first.loginWithCustomToken(LONG_LIVED_TOKEN, login);
+    pendingAuth.poll().onAuthSuccess(null);
+    assertNull(login.error);
+    assertEquals(AuthEvent.LOGIN, authState.lastEvent.get());
+    first.close();
+
+    // The restore applies the same rule as the login: the saved token goes to Firebase instead of being expired locally
+    SimpleLogin second = SessionOrderingTest.newSimpleLogin(ref, store, authState, false);
+    SessionOrderingTest.RecordingHandler restore = new SessionOrderingTest.RecordingHandler();
+    second.checkAuthStatus(restore);
+    assertNotNull(pendingAuth.poll());
+    assertNull(restore.error);
+    assertNotNull(store.get("jsonTokenData"));
+    second.close();
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.firebase.simplelogin;
+
+import com.firebase.client.Firebase.AuthListener;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Time from constructing a SimpleLogin to its first checkAuthStatus result, with and without a saved session.
+ *
+ * The first sample of a run is as cold as the test order allows; the rest show the warm cost. Results are printed;
+ * the bounds are loose and only catch startup doing blocking work again, such as network or transport setup.
+ *
+ * @author Firebase
+ *
+ */
+public class StartupBenchmarkTest {
+
+  // Unsigned custom token with d.uid = "custom:5" and no expiry
+  private static final String TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJ2IjowLCJkIjp7InVpZCI6ImN1c3RvbTo1In19.signature";
+  private static final int ITERATIONS = 200;
+  private static final long MAX_FIRST_MILLIS = 2000;
+  private static final long MAX_MEDIAN_MILLIS = 20;
+
+  @Test
+  public void timeToFirstResultWithoutSavedSession() throws Exception {
+    measure("no saved session", null);
+  }
+
+  @Test
+  public void timeToFirstResultWithOptimisticRestore() throws Exception {
+    JSONObject userData = new JSONObject();
+    userData.put("id", "custom:5");
+    userData.put("uid", "custom:5");
+    userData.put("provider", "custom");
+    JSONObject saved = new JSONObject();
+    saved.put("token", TOKEN);
+    saved.put("userData", userData);
+    measure("optimistic restore", saved.toString());
+  }
+
+  private void measure(String name, String savedSession) throws InterruptedException {
+    long[] nanos = new long[ITERATIONS];
+    for (int i = 0; i < ITERATIONS; i++) {
+      nanos[i] = timeToFirstResult(savedSession);
+    }
+    long first = TimeUnit.NANOSECONDS.toMillis(nanos[0]);
+    Arrays.sort(nanos);
+    long median = TimeUnit.NANOSECONDS.toMicros(nanos[ITERATIONS / 2]);
+    long max = TimeUnit.NANOSECONDS.toMicros(nanos[ITERATIONS - 1]);
+    System.out.println("Startup to first checkAuthStatus result (" + name + "): first " + first + " ms, median "
+        + median + " us, max " + max + " us over " + ITERATIONS + " runs");
+
+    assertTrue("first result took " + first + " ms", first < MAX_FIRST_MILLIS);
+    assertTrue("median took " + median + " us", median < TimeUnit.MILLISECONDS.toMicros(MAX_MEDIAN_MILLIS));
+  }
+
+  private long timeToFirstResult(String savedSession) throws InterruptedException {
+    InMemorySessionStore store = new InMemorySessionStore();
+    if (savedSession != null) {
+      store.put("jsonTokenData", savedSession);
+    }
+    final CountDownLatch result = new CountDownLatch(1);
+    long start = System.nanoTime();
+    SimpleLogin simpleLogin = SessionOrderingTest.newSimpleLogin(SessionOrderingTest.mockRef(new ConcurrentLinkedQueue<AuthListener>()),
+        store, new SessionOrderingTest.RecordingListener(), savedSession != null);
+    try {
+      simpleLogin.checkAuthStatus(new SimpleLoginAuthenticatedHandler() {
+        public void authenticated(FirebaseSimpleLoginError error, FirebaseSimpleLoginUser user) {
+          result.countDown();
+        }
+      });
+      assertTrue(result.await(MAX_FIRST_MILLIS, TimeUnit.MILLISECONDS));
+      return System.nanoTime() - start;
+    }
+    finally {
+      simpleLogin.close();
+    }
+  }
+
+}
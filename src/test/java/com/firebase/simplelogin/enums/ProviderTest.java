@@ -0,0 +1,47 @@
+package com.firebase.simplelogin.enums;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * Provider.fromString() lookups, which replace valueOf() on persisted and server supplied provider names.
+ *
+ * @author Firebase
+ *
+ */
+public class ProviderTest {
+
+  @Test
+  public void everyProviderRoundTripsThroughItsName() {
+    for (Provider provider : Provider.values()) {
+      assertSame(provider, Provider.fromString(provider.name()));
+      assertSame(provider, Provider.fromString(provider.name().toLowerCase()));
+    }
+  }
+
+  @Test
+  public void ignoresCaseAndSurroundingWhitespace() {
+    assertSame(Provider.FACEBOOK, Provider.fromString("FaceBook"));
+    assertSame(Provider.PASSWORD, Provider.fromString("  password\n"));
+    assertSame(Provider.TWITTER, Provider.fromString("\ttwitter "));
+  }
+
+  @Test
+  public void nullEmptyAndBlankAreInvalid() {
+    assertSame(Provider.INVALID, Provider.fromString(null));
+    assertSame(Provider.INVALID, Provider.fromString(""));
+    assertSame(Provider.INVALID, Provider.fromString("   "));
+  }
+
+  @Test
+  public void unknownNamesAreInvalid() {
+    assertSame(Provider.INVALID, Provider.fromString("github"));
+    assertSame(Provider.INVALID, Provider.fromString("pass word"));
+    assertSame(Provider.INVALID, Provider.fromString("passwords"));
+    assertSame(Provider.INVALID, Provider.fromString("passwor"));
+    // Only ASCII whitespace is trimmed, as by String.trim()
+    assertSame(Provider.INVALID, Provider.fromString("\u00a0google"));
+  }
+
+}